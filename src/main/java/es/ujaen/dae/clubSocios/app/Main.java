@@ -2,12 +2,18 @@ package es.ujaen.dae.clubSocios.app;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.jcache.JCacheCacheManager;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.core.env.Environment;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.stereotype.Component;
 
+import java.time.Clock;
+
 @SpringBootApplication(scanBasePackages = {
         "es.ujaen.dae.clubSocios.servicios",
         "es.ujaen.dae.clubSocios.repositorios",
@@ -16,8 +22,29 @@ import org.springframework.stereotype.Component;
 @EntityScan(basePackages = "es.ujaen.dae.clubSocios.entidades")
 @ComponentScan(basePackages = {"es.ujaen.dae.clubSocios"})
 @EnableCaching
+@EnableScheduling
 public class Main {
     public static void main(String[] args) {
         SpringApplication.run(Main.class);
     }
+
+    // Sin hilos virtuales en la JVM, Spring Boot ignora spring.threads.virtual.enabled sin avisar
+    Main(Environment entorno) {
+        if (entorno.getProperty("spring.threads.virtual.enabled", Boolean.class, false) && Runtime.version().feature() < 21)
+            throw new IllegalStateException("spring.threads.virtual.enabled requiere Java 21; esta JVM es Java "
+                    + Runtime.version().feature());
+    }
+
+    // Reloj de los servicios que dependen de la fecha (PlanificadorVencimientos); las pruebas lo sustituyen
+    @Bean
+    public Clock reloj() {
+        return Clock.systemDefaultZone();
+    }
+
+    // Las cachés de Spring (@Cacheable, @CacheEvict) guardan e invalidan al confirmar la transacción en curso,
+    // no antes: si no, una lectura concurrente podría volver a guardar el valor anterior al cambio
+    @Bean
+    public CacheManagerCustomizer<JCacheCacheManager> cachesTransaccionales() {
+        return cacheManager -> cacheManager.setTransactionAware(true);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package es.ujaen.dae.clubSocios.asignacion;
+
+import es.ujaen.dae.clubSocios.entidades.Solicitud;
+import es.ujaen.dae.clubSocios.enums.EstadoSolicitud;
+
+/**
+ * Solicitud que opta a plazas en una asignación, con lo que lleva recibido y lo que le falta.
+ * Las estrategias ordenan las candidatas a partir de estos datos.
+ */
+public final class Candidata {
+    private final Solicitud solicitud;
+    private final boolean parcial;
+    private int concedidas;
+    private int pendientes;
+
+    Candidata(Solicitud solicitud, int pendientes) {
+        this.solicitud = solicitud;
+        this.parcial = solicitud.getEstadoSolicitud() == EstadoSolicitud.PARCIAL;
+        this.pendientes = pendientes;
+    }
+
+    void conceder(int plazas) {
+        concedidas += plazas;
+        pendientes -= plazas;
+    }
+
+    public Solicitud getSolicitud() {
+        return solicitud;
+    }
+
+    /**
+     * Indica si la solicitud ya tenía alguna plaza al empezar la asignación (estado PARCIAL).
+     */
+    public boolean isParcial() {
+        return parcial;
+    }
+
+    /**
+     * Plazas concedidas en esta asignación.
+     */
+    public int getConcedidas() {
+        return concedidas;
+    }
+
+    /**
+     * Plazas que aún le faltan a la solicitud (socio y acompañantes).
+     */
+    public int getPendientes() {
+        return pendientes;
+    }
+}
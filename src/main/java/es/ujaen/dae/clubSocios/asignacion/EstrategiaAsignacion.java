@@ -0,0 +1,93 @@
+package es.ujaen.dae.clubSocios.asignacion;
+
+import es.ujaen.dae.clubSocios.enums.CriterioAsignacion;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * Estrategia de reparto de plazas para {@link MotorAsignacion}: en qué orden se atienden las candidatas
+ * y cuántas plazas recibe cada una cuando le toca.
+ */
+public interface EstrategiaAsignacion {
+    // Las solicitudes parciales tienen prioridad sobre las pendientes (ver EstadoSolicitud)
+    Comparator<Candidata> PARCIALES_PRIMERO = Comparator.comparing(c -> !c.isParcial());
+    Comparator<Candidata> POR_FECHA = Comparator.<Candidata, LocalDateTime>comparing(c -> c.getSolicitud().getFechaSolicitud())
+            .thenComparing(c -> c.getSolicitud().getSolicitudId());
+
+    /**
+     * Orden de prioridad: la primera candidata según este orden es la siguiente en recibir plazas.
+     */
+    Comparator<Candidata> prioridad();
+
+    /**
+     * Indica si cada candidata recibe una sola plaza cada vez que le toca y vuelve a la cola (reparto por turnos),
+     * o todas las que le faltan de una vez.
+     */
+    boolean unaPlazaPorTurno();
+
+    static EstrategiaAsignacion porOrdenDeLlegada() {
+        return new EstrategiaAsignacion() {
+            @Override
+            public Comparator<Candidata> prioridad() {
+                return PARCIALES_PRIMERO.thenComparing(POR_FECHA);
+            }
+
+            @Override
+            public boolean unaPlazaPorTurno() {
+                return false;
+            }
+        };
+    }
+
+    static EstrategiaAsignacion porTurnos() {
+        return new EstrategiaAsignacion() {
+            @Override
+            public Comparator<Candidata> prioridad() {
+                return Comparator.comparingInt(Candidata::getConcedidas)
+                        .thenComparing(PARCIALES_PRIMERO)
+                        .thenComparing(POR_FECHA);
+            }
+
+            @Override
+            public boolean unaPlazaPorTurno() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Sorteo: el orden depende sólo de la semilla y del id de cada solicitud, así que con la misma semilla
+     * el resultado es siempre el mismo, se recorran las solicitudes en el orden que se recorran.
+     */
+    static EstrategiaAsignacion sorteo(long semilla) {
+        return new EstrategiaAsignacion() {
+            @Override
+            public Comparator<Candidata> prioridad() {
+                return PARCIALES_PRIMERO
+                        .thenComparingLong((Candidata c) -> mezclar(semilla ^ c.getSolicitud().getSolicitudId()))
+                        .thenComparing(c -> c.getSolicitud().getSolicitudId());
+            }
+
+            @Override
+            public boolean unaPlazaPorTurno() {
+                return false;
+            }
+        };
+    }
+
+    static EstrategiaAsignacion de(CriterioAsignacion criterio, long semilla) {
+        return switch (criterio) {
+            case ORDEN_LLEGADA -> porOrdenDeLlegada();
+            case TURNOS -> porTurnos();
+            case SORTEO -> sorteo(semilla);
+        };
+    }
+
+    // Función de mezcla de SplitMix64: reparte de forma uniforme valores de entrada parecidos
+    private static long mezclar(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -0,0 +1,49 @@
+package es.ujaen.dae.clubSocios.asignacion;
+
+import es.ujaen.dae.clubSocios.entidades.Solicitud;
+import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import es.ujaen.dae.clubSocios.enums.EstadoSolicitud;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Reparto de las plazas libres de una actividad entre sus solicitudes en una sola pasada.
+ * Las candidatas (solicitudes no cerradas de socios con la cuota pagada) entran en una cola de prioridad
+ * ordenada por la estrategia, y se van sacando hasta agotar las plazas o las candidatas. Cada solicitud entra
+ * en la cola una vez, o una vez por plaza en el reparto por turnos, así que el coste es O(n log n) con n solicitudes.
+ * No modifica las solicitudes: devuelve el reparto para aplicarlo (Actividad.asignarPlazasFinInscripcion).
+ */
+public final class MotorAsignacion {
+
+    private MotorAsignacion() {
+    }
+
+    public static ResultadoAsignacion asignar(Collection<Solicitud> solicitudes, int plazasLibres, EstrategiaAsignacion estrategia) {
+        PriorityQueue<Candidata> cola = new PriorityQueue<>(Math.max(1, solicitudes.size()), estrategia.prioridad());
+        for (Solicitud solicitud : solicitudes) {
+            int pendientes = solicitud.getNumAcompanantes() + 1 - solicitud.getPlazasConcedidas();
+            if (solicitud.getEstadoSolicitud() != EstadoSolicitud.CERRADA && pendientes > 0
+                    && solicitud.getSocio().getEstadoCuota() == EstadoCuota.PAGADA)
+                cola.add(new Candidata(solicitud, pendientes));
+        }
+
+        Map<Solicitud, Integer> reparto = new LinkedHashMap<>();
+        int libres = plazasLibres;
+        while (libres > 0 && !cola.isEmpty()) {
+            Candidata candidata = cola.poll();
+            int plazas = estrategia.unaPlazaPorTurno() ? 1 : Math.min(candidata.getPendientes(), libres);
+
+            candidata.conceder(plazas);
+            reparto.merge(candidata.getSolicitud(), plazas, Integer::sum);
+            libres -= plazas;
+
+            if (candidata.getPendientes() > 0 && estrategia.unaPlazaPorTurno())
+                cola.add(candidata);
+        }
+
+        return new ResultadoAsignacion(reparto, plazasLibres - libres);
+    }
+}
@@ -0,0 +1,11 @@
+package es.ujaen.dae.clubSocios.asignacion;
+
+import es.ujaen.dae.clubSocios.entidades.Solicitud;
+
+import java.util.Map;
+
+/**
+ * Plazas concedidas a cada solicitud en una asignación (sólo las que reciben alguna), en el orden en que se concedieron.
+ */
+public record ResultadoAsignacion(Map<Solicitud, Integer> plazasPorSolicitud, int plazasAsignadas) {
+}
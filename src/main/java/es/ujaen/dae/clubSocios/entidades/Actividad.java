@@ -1,8 +1,12 @@
 package es.ujaen.dae.clubSocios.entidades;
 
+import es.ujaen.dae.clubSocios.asignacion.EstrategiaAsignacion;
+import es.ujaen.dae.clubSocios.asignacion.MotorAsignacion;
+import es.ujaen.dae.clubSocios.asignacion.ResultadoAsignacion;
 import es.ujaen.dae.clubSocios.enums.EstadoActividad;
 import es.ujaen.dae.clubSocios.enums.EstadoCuota;
 import es.ujaen.dae.clubSocios.enums.EstadoSolicitud;
+import es.ujaen.dae.clubSocios.enums.EstrategiaBloqueo;
 import es.ujaen.dae.clubSocios.excepciones.ActividadYaRegistrada;
 import es.ujaen.dae.clubSocios.excepciones.FueraDePlazo;
 import es.ujaen.dae.clubSocios.util.UtilList;
@@ -10,20 +14,37 @@ import jakarta.persistence.*;
 import es.ujaen.dae.clubSocios.excepciones.*;
 import jakarta.validation.constraints.*;
 
+import java.text.Normalizer;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
 
+// Sin caché de segundo nivel: las reservas de plaza (RepositorioActividad.reservarPlaza) son UPDATE masivos,
+// y cada uno invalidaría la región entera
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_actividad_temporada_titulo",
+                                             columnNames = {"temporada_id", "titulo_normalizado"}),
+       indexes = @Index(name = "idx_actividad_temporada_id", columnList = "temporada_id, id"))
 public class Actividad {
+    // Orden de llegada de las solicitudes: por fecha y, a igual fecha, por id (creciente en el tiempo, ver GeneradorIds)
+    private static final Comparator<Solicitud> ORDEN_LLEGADA =
+            Comparator.comparing(Solicitud::getFechaSolicitud).thenComparing(Solicitud::getSolicitudId);
+
     @Positive
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "actividad_seq")
+    @SequenceGenerator(name = "actividad_seq", sequenceName = "actividad_seq", allocationSize = 50)
     private Long id;
     @NotBlank
     private String titulo;
+    // Título sin mayúsculas, tildes ni espacios repetidos, único por temporada (índice para detectar duplicados)
+    @Column(name = "titulo_normalizado")
+    private String tituloNormalizado;
     @NotBlank
     private String descripcion;
     @Positive
@@ -35,12 +56,32 @@ public class Actividad {
     private LocalDate fechaCelebracion;
     private LocalDate fechaInicioInscripcion;
     private LocalDate fechaFinInscripcion;
-    @OneToMany(fetch = FetchType.LAZY, cascade = {CascadeType.PERSIST, CascadeType.REMOVE})
+    // Lado inverso: la relación la guarda la columna actividad_id de la solicitud, sin tabla intermedia.
+    // Se carga y se mantiene en orden de llegada (índice idx_solicitud_actividad_fecha de Solicitud)
+    @OneToMany(mappedBy = "actividad", fetch = FetchType.LAZY, cascade = {CascadeType.PERSIST, CascadeType.REMOVE})
+    @OrderBy("fechaSolicitud ASC, solicitudId ASC")
     private List<Solicitud> solicitudes;
+    // Índices en memoria sobre la lista de solicitudes (no se persisten). Se construyen la primera vez que se
+    // necesitan y se mantienen al añadir o quitar solicitudes, para no recorrer la lista en cada comprobación.
+    // Se descartan cuando JPA carga o refresca la actividad, o cuando merge le copia otra lista (olvidarIndices)
+    @Transient
+    private Map<String, Solicitud> solicitudesPorSocio;
+    @Transient
+    private Map<Long, Solicitud> solicitudesPorId;
+    // Lista sobre la que se construyeron los índices; si se sustituye la lista, se reconstruyen
+    @Transient
+    private List<Solicitud> solicitudesIndexadas;
     // Relación con Temporada
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "temporada_id")
     private Temporada temporada;
+    // Estrategia de bloqueo para las inscripciones en esta actividad; null para usar la general (clubsocios.bloqueo.estrategia)
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private EstrategiaBloqueo estrategiaBloqueo;
+    // Ya se ha hecho la asignación automática de fin de inscripción (una sola vez: quien la hace,
+    // PlanificadorVencimientos o AsignacionTemporada, la marca antes con un UPDATE condicionado)
+    private boolean asignacionRealizada;
 
     @Version
     int version;
@@ -53,6 +94,7 @@ public class Actividad {
                      int totalPlazas, LocalDate fechaCelebracion, LocalDate fechaInicioInscripcion, LocalDate fechaFinInscripcion) {
         
         this.titulo = titulo;
+        this.tituloNormalizado = normalizarTitulo(titulo);
         this.descripcion = descripcion;
         this.precio = precio;
         //las plazas disponibles inicialmente son iguales al total de plazas
@@ -66,23 +108,46 @@ public class Actividad {
         this.solicitudes = new ArrayList<>();
     }
 
+    /**
+     * Añade la solicitud en su sitio según el orden de llegada. Las solicitudes nuevas son las más recientes,
+     * así que normalmente va al final sin desplazar ninguna.
+     */
     public void agregarSolicitud(Solicitud solicitud) {
-        solicitudes.add(solicitud);
-
+        solicitud.setActividad(this);
+        int posicion = solicitudes.size();
+        while (posicion > 0 && ORDEN_LLEGADA.compare(solicitudes.get(posicion - 1), solicitud) > 0)
+            posicion--;
+        solicitudes.add(posicion, solicitud);
+
+        if (solicitudesPorId != null) {
+            solicitudesPorId.put(solicitud.getSolicitudId(), solicitud);
+            solicitudesPorSocio.put(solicitud.getSocioId(), solicitud);
+        }
     }
 
+    /**
+     * Quita la solicitud de la actividad. Se localiza por su id, por lo que vale también
+     * una copia de la solicitud que no sea la misma instancia que la de la lista.
+     */
     public void quitarSolicitud(Solicitud solicitud) {
-        solicitudes.remove(solicitud);
+        Solicitud existente = solicitudesPorId().remove(solicitud.getSolicitudId());
+        if (existente == null)
+            return;
+
+        solicitudesPorSocio.remove(existente.getSocioId());
+        solicitudes.remove(existente);
     }
 
+    /**
+     * Solicitudes de la actividad en orden de llegada. La lista ya está ordenada, así que se devuelve
+     * una vista de sólo lectura, sin ordenar ni copiar.
+     */
     public List<Solicitud> revisarSolicitudes() {
 //        if (estado() != EstadoActividad.PLAZO_INSCRIPCION_FINALIZADO) {
 //            throw new FechaNoValida();
 //        }
 
-        return solicitudes.stream()
-                .sorted(Comparator.comparing(Solicitud::getFechaSolicitud))
-                .collect(Collectors.toList());
+        return Collections.unmodifiableList(solicitudes);
     }
 
     /**
@@ -95,7 +160,15 @@ public class Actividad {
      * @param numAcompanantes numero de acompañantes que llevará el socio
      */
     public Solicitud solicitarInscripcion(Socio socio, @PositiveOrZero int numAcompanantes, boolean administrador) {
-        if (!estaEnPeriodoInscripcion() && !administrador) {
+        return solicitarInscripcion(socio, numAcompanantes, administrador, LocalDate.now());
+    }
+
+    /**
+     * Como {@link #solicitarInscripcion(Socio, int, boolean)}, comprobando el plazo en la fecha indicada
+     * (ServicioClub pasa la del Clock de la aplicación).
+     */
+    public Solicitud solicitarInscripcion(Socio socio, @PositiveOrZero int numAcompanantes, boolean administrador, LocalDate hoy) {
+        if (!estaEnPeriodoInscripcion(hoy) && !administrador) {
             throw new FueraDePlazo();
         }
 
@@ -103,11 +176,12 @@ public class Actividad {
             throw new NoHayPlazas("No hay plazas disponibles en la actividad");
         }
 
-        if (solicitudes.stream().anyMatch(s -> s.getSocioId().equals(socio.getSocioId()))) {
+        if (solicitudesPorSocio().containsKey(socio.getSocioId())) {
             throw new SolicitudYaRealizada();
         }
 
         Solicitud nuevaSolicitud = new Solicitud(socio, numAcompanantes);
+        nuevaSolicitud.setActividad(this);
 
         if (socio.getEstadoCuota().equals(EstadoCuota.PAGADA)) {
             asignarPlaza(nuevaSolicitud);
@@ -120,6 +194,22 @@ public class Actividad {
         return nuevaSolicitud;
     }
 
+    /**
+     * Crea la solicitud de un socio cuya plaza ya se ha reservado en base de datos (RepositorioActividad.reservarPlaza).
+     * No recorre la lista de solicitudes ni modifica el contador de plazas en memoria, que queda a cargo de la base de datos.
+     * El estado se evalúa con las plazas que quedan tras la reserva, igual que en {@link #asignarPlaza}.
+     * @param socio socio que realiza la solicitud, con la cuota pagada
+     * @param numAcompanantes numero de acompañantes que llevará el socio
+     * @param plazasRestantes plazas libres de la actividad en base de datos después de la reserva
+     */
+    public Solicitud solicitudConPlazaReservada(Socio socio, @PositiveOrZero int numAcompanantes, int plazasRestantes) {
+        Solicitud nuevaSolicitud = new Solicitud(socio, numAcompanantes);
+        nuevaSolicitud.setActividad(this);
+        nuevaSolicitud.concederPlaza();
+        nuevaSolicitud.evaluarEstado(plazasRestantes >= 1);
+        return nuevaSolicitud;
+    }
+
     /**
      * Asigna plazas de una en una en una actividad, siendo ésta una asignación equitativa.
      * Además, concede la plaza asignada a la solicitud que está siendo manejada.
@@ -143,8 +233,15 @@ public class Actividad {
      * @param solicitud solicitud en la que se van a asignar las plazas.
      */
     public void asignarPlazasFinal(Solicitud solicitud) {
+        asignarPlazasFinal(solicitud, LocalDate.now());
+    }
 
-        if (estado() != EstadoActividad.PLAZO_INSCRIPCION_FINALIZADO) {
+    /**
+     * Como {@link #asignarPlazasFinal(Solicitud)}, comprobando el plazo en la fecha indicada.
+     */
+    public void asignarPlazasFinal(Solicitud solicitud, LocalDate hoy) {
+
+        if (estado(hoy) != EstadoActividad.PLAZO_INSCRIPCION_FINALIZADO) {
             throw new FueraDePlazo();
         }
 
@@ -163,45 +260,58 @@ public class Actividad {
 
     /**
      * Esta es la asignación automática, esto debe hacerlo al final, es la parte voluntaria.
-     * Hace una primera vuelta para las solicitudes parciales y una segunda vuelta para las solicitudes pendientes.
-     * En la segunda vuelta, no deberían quedar solicitudes parciales,
-     * ya que si sigue habiendo plazas, deberían haber sido asignadas todas las de este tipo de solicitudes.
-     * Por tanto, sólo habrá pendientes y cerradas, entonces si se intenta acceder a una solicitud cerrada se pasará a la siguiente hasta que haya una pendiente
+     * Reparte las plazas libres entre las solicitudes no cerradas de socios con la cuota pagada,
+     * en una sola pasada de {@link MotorAsignacion} con la estrategia indicada.
+     * Cada solicitud recibe de una vez todas las plazas que le tocan y queda CERRADA o PARCIAL.
+     * @param estrategia orden en que se atienden las solicitudes y cuántas plazas recibe cada una cuando le toca;
+     *                   ServicioClub pasa la del criterio configurado (clubsocios.asignacion.criterio)
+     * @return las plazas concedidas a cada solicitud
      */
-    public void asignarPlazasFinInscripcion(boolean administrador) {
+    public ResultadoAsignacion asignarPlazasFinInscripcion(boolean administrador, EstrategiaAsignacion estrategia) {
+        return asignarPlazasFinInscripcion(administrador, estrategia, LocalDate.now());
+    }
 
-        if (estado() != EstadoActividad.ABIERTA && !administrador)
+    /**
+     * Como {@link #asignarPlazasFinInscripcion(boolean, EstrategiaAsignacion)}, comprobando el plazo en la fecha indicada.
+     */
+    public ResultadoAsignacion asignarPlazasFinInscripcion(boolean administrador, EstrategiaAsignacion estrategia, LocalDate hoy) {
+
+        if (estado(hoy) != EstadoActividad.ABIERTA && !administrador)
             throw new FueraDePlazo();
 
         if (!hayPlaza())
             throw new NoHayPlazas("No hay plazas disponibles en la actividad");
 
-        solicitudes.stream()
-                   .filter(s -> s.getEstadoSolicitud().equals(EstadoSolicitud.PARCIAL) && hayPlaza())
-                   .forEach(this::asignarPlaza);
-
-        solicitudes.stream()
-                   .filter(s -> !s.getEstadoSolicitud().equals(EstadoSolicitud.CERRADA) && hayPlaza())
-                   .forEach(this::asignarPlaza);
+        ResultadoAsignacion resultado = MotorAsignacion.asignar(solicitudes, plazasDisponibles, estrategia);
+        resultado.plazasPorSolicitud().forEach(Solicitud::concederPlazas);
+        plazasDisponibles -= resultado.plazasAsignadas();
+        asignacionRealizada = true;
+        return resultado;
     }
 
     /**
-     * Comprueba si la actividad está en periodo de inscripción.
-     * @return true si está en período de inscripción y false si no.
+     * Comprueba si la actividad está en periodo de inscripción en la fecha indicada.
      */
-    private boolean estaEnPeriodoInscripcion() {
-        LocalDate now = LocalDate.now();
-        return !now.isBefore(fechaInicioInscripcion) && !now.isAfter(fechaFinInscripcion);
+    public boolean estaEnPeriodoInscripcion(LocalDate fecha) {
+        return !fecha.isBefore(fechaInicioInscripcion) && !fecha.isAfter(fechaFinInscripcion);
     }
 
     /**
-     * Usando la fecha y hora actual del sistema, devuelve el estado que le corresponde a la actividad
+     * Usando la fecha actual del sistema, devuelve el estado que le corresponde a la actividad. Los servicios usan
+     * {@link #estado(LocalDate)} con la fecha del Clock de la aplicación
      * @return el estado de la actividad
      */
     public EstadoActividad estado() {
-        if (LocalDate.now().isBefore(fechaInicioInscripcion))
+        return estado(LocalDate.now());
+    }
+
+    /**
+     * Estado que le corresponde a la actividad en la fecha indicada
+     */
+    public EstadoActividad estado(LocalDate fecha) {
+        if (fecha.isBefore(fechaInicioInscripcion))
             return EstadoActividad.CERRADA;
-        if (LocalDate.now().isAfter(fechaFinInscripcion))
+        if (fecha.isAfter(fechaFinInscripcion))
             return EstadoActividad.PLAZO_INSCRIPCION_FINALIZADO;
         return EstadoActividad.ABIERTA;
     }
@@ -224,6 +334,30 @@ public class Actividad {
             throw new FechaNoValida();
     }
 
+    /**
+     * Calcula el título normalizado de una actividad guardada antes de existir la columna titulo_normalizado.
+     */
+    public void completarTituloNormalizado() {
+        if (tituloNormalizado == null)
+            tituloNormalizado = normalizarTitulo(titulo);
+    }
+
+    /**
+     * Normaliza un título para compararlo con otros: sin tildes, en minúsculas y con los espacios simplificados.
+     * @param titulo título a normalizar
+     * @return el título normalizado, o null si el título es null
+     */
+    public static String normalizarTitulo(String titulo) {
+        if (titulo == null)
+            return null;
+
+        return Normalizer.normalize(titulo, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .trim()
+                .replaceAll("\\s+", " ");
+    }
+
     // Getters
     public Long getId() {
         return id;
@@ -237,6 +371,10 @@ public class Actividad {
         return titulo;
     }
 
+    public String getTituloNormalizado() {
+        return tituloNormalizado;
+    }
+
     public String getDescripcion() {
         return descripcion;
     }
@@ -262,13 +400,25 @@ public class Actividad {
     }
 
     public List<Solicitud> getSolicitudes() {
-        return solicitudes;
+        return Collections.unmodifiableList(solicitudes);
     }
 
     public boolean hayPlaza() {
         return plazasDisponibles >= 1;
     }
 
+    public boolean isAsignacionRealizada() {
+        return asignacionRealizada;
+    }
+
+    public EstrategiaBloqueo getEstrategiaBloqueo() {
+        return estrategiaBloqueo;
+    }
+
+    public void setEstrategiaBloqueo(EstrategiaBloqueo estrategiaBloqueo) {
+        this.estrategiaBloqueo = estrategiaBloqueo;
+    }
+
     public void setPlazasDisponibles(@PositiveOrZero int plazasDisponibles) {
         this.plazasDisponibles = plazasDisponibles;
     }
@@ -281,13 +431,46 @@ public class Actividad {
         this.temporada = temporada;
     }
 
-    public boolean solicitudExiste(String solicitudId){
-        for (int i = 0; i < solicitudes.size(); i++) {
-            if(solicitudes.get(i).getSolicitudId().equals(solicitudId)){
-                return true;
-            }
+    public boolean solicitudExiste(Long solicitudId){
+        return solicitudesPorId().containsKey(solicitudId);
+    }
+
+    private Map<String, Solicitud> solicitudesPorSocio() {
+        construirIndices();
+        return solicitudesPorSocio;
+    }
+
+    private Map<Long, Solicitud> solicitudesPorId() {
+        construirIndices();
+        return solicitudesPorId;
+    }
+
+    /**
+     * Descarta los índices de solicitudes para que se reconstruyan en el siguiente uso. JPA la llama al cargar
+     * o refrescar la actividad; los repositorios, tras merge, que puede cambiar el contenido de la lista
+     * sin pasar por agregarSolicitud/quitarSolicitud.
+     */
+    @PostLoad
+    public void olvidarIndices() {
+        solicitudesPorId = null;
+        solicitudesPorSocio = null;
+        solicitudesIndexadas = null;
+    }
+
+    /**
+     * Construye los índices a partir de la lista de solicitudes si aún no existen o si la lista es otra.
+     */
+    private void construirIndices() {
+        if (solicitudesPorId != null && solicitudesIndexadas == solicitudes)
+            return;
+
+        solicitudesIndexadas = solicitudes;
+        solicitudesPorId = new HashMap<>(solicitudes.size() * 2);
+        solicitudesPorSocio = new HashMap<>(solicitudes.size() * 2);
+        for (Solicitud solicitud : solicitudes) {
+            solicitudesPorId.put(solicitud.getSolicitudId(), solicitud);
+            solicitudesPorSocio.put(solicitud.getSocioId(), solicitud);
         }
-        return false;
     }
 }
 
@@ -0,0 +1,63 @@
+package es.ujaen.dae.clubSocios.entidades;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Respuesta guardada de una petición con cabecera Idempotency-Key, para devolverla tal cual si el cliente
+ * repite la petición. Mientras la petición original está en curso, estado vale null.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_respuesta_idempotente_creada", columnList = "creada"))
+public class RespuestaIdempotente {
+    // Usuario y clave enviada por el cliente
+    @Id
+    @Column(length = 320)
+    private String clave;
+    // Método, ruta y parámetros de la petición original; la misma clave con otra petición es un error del cliente
+    @Column(length = 1000)
+    private String peticion;
+    private Integer estado;
+    @Column(length = 4000)
+    private String cuerpo;
+    private LocalDateTime creada;
+
+    public RespuestaIdempotente() {
+    }
+
+    public RespuestaIdempotente(String clave, String peticion) {
+        this.clave = clave;
+        this.peticion = peticion;
+        this.creada = LocalDateTime.now();
+    }
+
+    public void completar(int estado, String cuerpo) {
+        this.estado = estado;
+        this.cuerpo = cuerpo;
+    }
+
+    public boolean completada() {
+        return estado != null;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public String getPeticion() {
+        return peticion;
+    }
+
+    public Integer getEstado() {
+        return estado;
+    }
+
+    public String getCuerpo() {
+        return cuerpo;
+    }
+
+    public LocalDateTime getCreada() {
+        return creada;
+    }
+}
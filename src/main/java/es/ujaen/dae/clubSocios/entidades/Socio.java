@@ -13,6 +13,8 @@ import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -20,6 +22,8 @@ import java.util.List;
 import java.util.Optional;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "socio")
 public class Socio {
 
     @Email
@@ -63,7 +67,7 @@ public class Socio {
         solicitudes = new ArrayList<>();
     }
 
-    public void modificarSolicitud(String solicitudId, int numAcompanantes) {
+    public void modificarSolicitud(Long solicitudId, int numAcompanantes) {
         boolean flag = false;
         for (Solicitud solicitud : solicitudes) {
             if (solicitud.getSolicitudId().equals(solicitudId)) {
@@ -78,7 +82,7 @@ public class Socio {
         }
     }
 
-    public void borrarSolicitud(String solicitudId) {
+    public void borrarSolicitud(Long solicitudId) {
         boolean flag = false;
         Iterator<Solicitud> iterator = solicitudes.iterator();
         while (iterator.hasNext()) {
@@ -2,6 +2,7 @@ package es.ujaen.dae.clubSocios.entidades;
 
 import es.ujaen.dae.clubSocios.enums.EstadoCuota;
 import es.ujaen.dae.clubSocios.enums.EstadoSolicitud;
+import es.ujaen.dae.clubSocios.util.GeneradorIds;
 import jakarta.persistence.*;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.*;
@@ -11,13 +12,23 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = Solicitud.UK_ACTIVIDAD_SOCIO, columnNames = {"actividad_id", "socioId"}),
+       indexes = @Index(name = "idx_solicitud_actividad_fecha", columnList = "actividad_id, fechaSolicitud, solicitudId"))
 public class Solicitud {
+    // Restricción única de una solicitud por socio y actividad
+    public static final String UK_ACTIVIDAD_SOCIO = "uk_solicitud_actividad_socio";
+
+    // Identificador numérico ordenado en el tiempo, generado en la aplicación (no requiere ir a la base de datos)
     @Id
-    private String solicitudId;
+    private Long solicitudId;
     @ManyToOne
     @JoinColumn(name = "socioId", nullable = false)
     @Valid
     private Socio socio;
+    // Actividad a la que pertenece; junto con el socio forma una clave única (una solicitud por socio y actividad)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "actividad_id")
+    private Actividad actividad;
     @Min(0)
     @Max(5)
     private int numAcompanantes;
@@ -35,7 +46,7 @@ public class Solicitud {
 
     public Solicitud(Socio socio, int numAcompanantes) {
         this.socio = socio;
-        this.solicitudId = generarSolicitudId();
+        this.solicitudId = GeneradorIds.siguiente();
         this.numAcompanantes = numAcompanantes;
         //Todas las solicitudes se crean con un estado pendiente
         this.estadoSolicitud = EstadoSolicitud.PENDIENTE;
@@ -45,10 +56,6 @@ public class Solicitud {
         this.plazasConcedidas = 0;
     }
 
-    private String generarSolicitudId() {
-        return this.socio.getSocioId() + System.currentTimeMillis();
-    }
-
     public void modificarNumAcompanantes(int nuevoNumAcompanantes) {
         if (nuevoNumAcompanantes < 0 || nuevoNumAcompanantes >= 5)
             throw new IllegalArgumentException("El número de acompañantes debe ser mayor que 0 y menor que 5");
@@ -60,6 +67,15 @@ public class Solicitud {
         plazasConcedidas++;
     }
 
+    /**
+     * Concede varias plazas de una vez (asignación al final del período de inscripción) y actualiza el estado:
+     * CERRADA si ya tiene todas las plazas que pedía (socio y acompañantes), PARCIAL si no.
+     */
+    void concederPlazas(int plazas) {
+        plazasConcedidas += plazas;
+        estadoSolicitud = plazasConcedidas >= numAcompanantes + 1 ? EstadoSolicitud.CERRADA : EstadoSolicitud.PARCIAL;
+    }
+
     /**
      * Asigna el estado que le corresponde a cada solicitud.
      * Para ello, comprueba si el socio ha pagado y si hay plaza en la actividad, en caso contrario la solicitud será Pendiente.
@@ -69,8 +85,16 @@ public class Solicitud {
      * La solicitud será Parcial en este caso, y Cerrada en caso contrario.
      */
     public void evaluarEstado(Actividad actividad) {
+        evaluarEstado(actividad.hayPlaza());
+    }
+
+    /**
+     * Como {@link #evaluarEstado(Actividad)}, indicando directamente si a la actividad le quedan plazas
+     * (cuando las plazas se han reservado en base de datos y la actividad en memoria no está al día).
+     */
+    void evaluarEstado(boolean hayPlaza) {
         int totalPlazas = numAcompanantes + 1;
-        if (!socio.getEstadoCuota().equals(EstadoCuota.PAGADA) || !actividad.hayPlaza()) {
+        if (!socio.getEstadoCuota().equals(EstadoCuota.PAGADA) || !hayPlaza) {
             this.estadoSolicitud = EstadoSolicitud.PENDIENTE;
         } else {
             this.estadoSolicitud = totalPlazas > 1 &&
@@ -84,7 +108,7 @@ public class Solicitud {
         return socio.getSocioId();
     }
 
-    public String getSolicitudId() {
+    public Long getSolicitudId() {
         return solicitudId;
     }
 
@@ -92,6 +116,14 @@ public class Solicitud {
         return socio;
     }
 
+    public Actividad getActividad() {
+        return actividad;
+    }
+
+    public void setActividad(Actividad actividad) {
+        this.actividad = actividad;
+    }
+
     public int getNumAcompanantes() {
         return numAcompanantes;
     }
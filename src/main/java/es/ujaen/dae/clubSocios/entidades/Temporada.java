@@ -3,21 +3,28 @@ package es.ujaen.dae.clubSocios.entidades;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "temporada")
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_temporada_anio", columnNames = "anio"))
 public class Temporada {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "temporada_seq")
+    @SequenceGenerator(name = "temporada_seq", sequenceName = "temporada_seq", allocationSize = 50)
     private Long temporadaId;
 
     @Min(2000)
     @Max(9999)
     private int anio;
 
-    @OneToMany(fetch = FetchType.LAZY)
+    // Lado inverso: la relación la guarda la columna temporada_id de la actividad, sin tabla intermedia
+    @OneToMany(mappedBy = "temporada", fetch = FetchType.LAZY)
     @OrderBy("id ASC") // Orden ascendente por ID
     private List<Actividad> actividades;
 
@@ -31,6 +38,7 @@ public class Temporada {
     }
 
     public void aniadirActividad(Actividad actividad) {
+        actividad.setTemporada(this);
         actividades.add(actividad);
     }
 
@@ -0,0 +1,14 @@
+package es.ujaen.dae.clubSocios.enums;
+
+/**
+ * Criterio para repartir las plazas libres al final del período de inscripción. En todos, las solicitudes
+ * PARCIALES van antes que las PENDIENTES.
+ * ORDEN_LLEGADA: por fecha de solicitud; cada solicitud recibe todas las plazas que le faltan antes de pasar a la siguiente.
+ * TURNOS: reparto equitativo, una plaza por solicitud en cada vuelta (y dentro de la vuelta, por fecha de solicitud).
+ * SORTEO: orden aleatorio reproducible a partir de una semilla; cada solicitud recibe todas las plazas que le faltan.
+ */
+public enum CriterioAsignacion {
+    ORDEN_LLEGADA,
+    TURNOS,
+    SORTEO;
+}
@@ -0,0 +1,13 @@
+package es.ujaen.dae.clubSocios.enums;
+
+/**
+ * Estado de un turno de la sala de espera de inscripciones.
+ * EN_ESPERA: el turno está en la cola de la actividad y aún no se ha intentado la inscripción.
+ * CONFIRMADO: la solicitud del socio se ha registrado.
+ * RECHAZADO: no se ha podido registrar la solicitud (sin plazas, solicitud repetida...); el motivo va en el turno.
+ */
+public enum EstadoTurno {
+    EN_ESPERA,
+    CONFIRMADO,
+    RECHAZADO;
+}
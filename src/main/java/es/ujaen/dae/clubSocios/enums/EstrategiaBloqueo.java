@@ -0,0 +1,13 @@
+package es.ujaen.dae.clubSocios.enums;
+
+/**
+ * Cómo se protege la actividad frente a inscripciones concurrentes al cargarla para actualizarla.
+ * OPTIMISTA: se lee sin bloquear y el conflicto se detecta al confirmar, por la versión; se reintenta.
+ * PESIMISTA: se lee con SELECT ... FOR UPDATE; las demás inscripciones esperan en la base de datos (hasta un tiempo máximo).
+ * SALTAR_BLOQUEADAS: SELECT ... FOR UPDATE SKIP LOCKED; si otra inscripción tiene la fila, no se espera: se reintenta más tarde.
+ */
+public enum EstrategiaBloqueo {
+    OPTIMISTA,
+    PESIMISTA,
+    SALTAR_BLOQUEADAS;
+}
@@ -0,0 +1,13 @@
+package es.ujaen.dae.clubSocios.eventos;
+
+import es.ujaen.dae.clubSocios.enums.EstadoActividad;
+
+import java.time.Instant;
+
+/**
+ * Evento de aplicación: una actividad ha cambiado de estado al vencer una de sus fechas de inscripción.
+ * Lo publica PlanificadorVencimientos. El paso a PLAZO_INSCRIPCION_FINALIZADO se publica una sola vez por actividad,
+ * después de confirmar la asignación de plazas; el paso a ABIERTA, una vez en cada instancia de la aplicación.
+ */
+public record CambioEstadoActividad(Long actividadId, EstadoActividad anterior, EstadoActividad nuevo, Instant instante) {
+}
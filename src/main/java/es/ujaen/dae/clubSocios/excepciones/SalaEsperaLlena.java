@@ -0,0 +1,5 @@
+package es.ujaen.dae.clubSocios.excepciones;
+
+public class SalaEsperaLlena extends RuntimeException{
+    public SalaEsperaLlena() {}
+}
@@ -0,0 +1,77 @@
+package es.ujaen.dae.clubSocios.replicas;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.TaskScheduler;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sustituye el DataSource de spring.datasource por uno que envía las transacciones de sólo lectura
+ * a las réplicas configuradas en clubsocios.replicas y el resto a la base de datos primaria.
+ */
+@Configuration
+@EnableConfigurationProperties(PropiedadesReplicas.class)
+@ConditionalOnProperty(prefix = "clubsocios.replicas", name = "habilitadas", havingValue = "true")
+public class ConfiguracionReplicas {
+
+    /**
+     * Con open-in-view el EntityManager de la petición se queda con la conexión de la primera transacción;
+     * si es de sólo lectura, las escrituras posteriores de la misma petición irían a la réplica.
+     */
+    ConfiguracionReplicas(Environment entorno) {
+        if (entorno.getProperty("spring.jpa.open-in-view", Boolean.class, true))
+            throw new IllegalStateException("Las réplicas de lectura requieren spring.jpa.open-in-view=false");
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource dataSourcePrimaria(DataSourceProperties propiedades) {
+        HikariDataSource primaria = propiedades.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primaria.setPoolName(DataSourceEnrutado.PRIMARIA);
+        return primaria;
+    }
+
+    @Bean
+    DataSourceEnrutado dataSourceEnrutado(HikariDataSource dataSourcePrimaria, PropiedadesReplicas propiedades,
+                                          TaskScheduler programador) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < propiedades.fuentes().size(); i++) {
+            var replica = propiedades.fuentes().get(i);
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("replica-" + i);
+            pool.setJdbcUrl(replica.url());
+            pool.setUsername(replica.username());
+            pool.setPassword(replica.password());
+            pool.setReadOnly(true);
+            replicas.put(pool.getPoolName(), pool);
+        }
+
+        // La comprobación periódica del retraso se programa en el TaskScheduler de @Scheduled (spring.task.scheduling)
+        var enrutado = new DataSourceEnrutado(dataSourcePrimaria, replicas, propiedades.retrasoMaximo(),
+                propiedades.intervaloComprobacion(), propiedades.consultaRetraso());
+        enrutado.setProgramador(programador);
+        return enrutado;
+    }
+
+    /**
+     * DataSource que usa JPA. El proxy retrasa la obtención de la conexión real hasta la primera sentencia,
+     * cuando la transacción ya está marcada como de sólo lectura; sin él, la conexión se pediría al empezar
+     * la transacción y siempre se elegiría la primaria.
+     */
+    @Bean
+    @Primary
+    DataSource dataSource(DataSourceEnrutado dataSourceEnrutado) {
+        return new LazyConnectionDataSourceProxy(dataSourceEnrutado);
+    }
+}
@@ -0,0 +1,172 @@
+package es.ujaen.dae.clubSocios.replicas;
+
+import es.ujaen.dae.clubSocios.rest.dto.DTOEstadisticasFuenteDatos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DataSource que envía las transacciones de sólo lectura ({@code @Transactional(readOnly = true)}) a una réplica
+ * y el resto a la primaria. Las réplicas se reparten por turnos entre las que tienen un retraso de replicación
+ * aceptable; si ninguna lo tiene, la lectura va a la primaria.
+ * Debe usarse detrás de un LazyConnectionDataSourceProxy (ver {@link ConfiguracionReplicas}).
+ */
+public class DataSourceEnrutado extends AbstractRoutingDataSource implements DisposableBean {
+    public static final String PRIMARIA = "primaria";
+
+    private static final Logger log = LoggerFactory.getLogger(DataSourceEnrutado.class);
+
+    private final DataSource primaria;
+    private final Map<String, DataSource> replicas;
+    private final long retrasoMaximoSegundos;
+    private final Duration intervaloComprobacion;
+    private final String consultaRetraso;
+
+    // Réplicas que pueden recibir lecturas según la última comprobación
+    private volatile List<String> replicasDisponibles;
+    private final Map<String, Long> retrasos = new ConcurrentHashMap<>();
+    private final AtomicInteger turno = new AtomicInteger();
+
+    // Métricas por fuente: conexiones entregadas y lecturas desviadas a la primaria por falta de réplicas
+    private final Map<String, LongAdder> conexiones = new HashMap<>();
+    private final LongAdder lecturasDesviadas = new LongAdder();
+
+    // Programador de tareas de Spring en el que se repite la comprobación de las réplicas
+    private TaskScheduler programador;
+    private ScheduledFuture<?> comprobacion;
+
+    public DataSourceEnrutado(DataSource primaria, Map<String, DataSource> replicas, Duration retrasoMaximo,
+                              Duration intervaloComprobacion, String consultaRetraso) {
+        this.primaria = primaria;
+        this.replicas = new LinkedHashMap<>(replicas);
+        this.retrasoMaximoSegundos = retrasoMaximo.toSeconds();
+        this.intervaloComprobacion = intervaloComprobacion;
+        this.consultaRetraso = consultaRetraso;
+        this.replicasDisponibles = List.copyOf(replicas.keySet());
+
+        Map<Object, Object> destinos = new HashMap<>(replicas);
+        destinos.put(PRIMARIA, primaria);
+        setTargetDataSources(destinos);
+        setDefaultTargetDataSource(primaria);
+        destinos.keySet().forEach(nombre -> conexiones.put((String) nombre, new LongAdder()));
+    }
+
+    public void setProgramador(TaskScheduler programador) {
+        this.programador = programador;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        comprobarReplicas();
+
+        // Sin programador o con intervalo cero la comprobación sólo se hace al llamar a comprobarReplicas (pruebas)
+        if (programador != null && !intervaloComprobacion.isZero() && !replicas.isEmpty()) {
+            comprobacion = programador.scheduleWithFixedDelay(this::comprobarReplicas,
+                    Instant.now().plus(intervaloComprobacion), intervaloComprobacion);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String destino = PRIMARIA;
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            List<String> disponibles = replicasDisponibles;
+            if (disponibles.isEmpty())
+                lecturasDesviadas.increment();
+            else
+                destino = disponibles.get(Math.floorMod(turno.getAndIncrement(), disponibles.size()));
+        }
+
+        conexiones.get(destino).increment();
+        return destino;
+    }
+
+    /**
+     * Mide el retraso de cada réplica y deja fuera del reparto las que superan el máximo,
+     * no responden o no están replicando.
+     */
+    public void comprobarReplicas() {
+        List<String> disponibles = new ArrayList<>();
+        replicas.forEach((nombre, replica) -> {
+            Long retraso = medirRetraso(nombre, replica);
+            if (retraso == null) {
+                retrasos.remove(nombre);
+            } else {
+                retrasos.put(nombre, retraso);
+                if (retraso <= retrasoMaximoSegundos)
+                    disponibles.add(nombre);
+            }
+        });
+
+        if (disponibles.size() != replicasDisponibles.size())
+            log.warn("Réplicas disponibles para lectura: {} de {}", disponibles, replicas.keySet());
+        replicasDisponibles = List.copyOf(disponibles);
+    }
+
+    private Long medirRetraso(String nombre, DataSource replica) {
+        try (Connection conexion = replica.getConnection();
+             Statement sentencia = conexion.createStatement();
+             ResultSet resultado = sentencia.executeQuery(consultaRetraso)) {
+
+            if (!resultado.next())
+                return null;
+
+            // En MySQL (SHOW REPLICA STATUS) la columna es Seconds_Behind_Source; vale null si la réplica está parada
+            int columna = resultado.getMetaData().getColumnCount() > 1 ? resultado.findColumn("Seconds_Behind_Source") : 1;
+            long retraso = resultado.getLong(columna);
+            return resultado.wasNull() ? null : retraso;
+        } catch (SQLException e) {
+            log.warn("No se ha podido comprobar el retraso de la réplica {}: {}", nombre, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Conexiones entregadas por cada fuente de datos, estado y último retraso medido de las réplicas.
+     */
+    public List<DTOEstadisticasFuenteDatos> estadisticas() {
+        List<DTOEstadisticasFuenteDatos> resultado = new ArrayList<>();
+        resultado.add(new DTOEstadisticasFuenteDatos(PRIMARIA, conexiones.get(PRIMARIA).sum(),
+                lecturasDesviadas.sum(), true, 0L));
+
+        List<String> disponibles = replicasDisponibles;
+        for (String nombre : replicas.keySet()) {
+            resultado.add(new DTOEstadisticasFuenteDatos(nombre, conexiones.get(nombre).sum(), 0,
+                    disponibles.contains(nombre), retrasos.get(nombre)));
+        }
+        return resultado;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (comprobacion != null)
+            comprobacion.cancel(true);
+
+        // La primaria es un bean y la cierra Spring; las réplicas se crean en ConfiguracionReplicas
+        for (DataSource replica : replicas.values()) {
+            if (replica instanceof AutoCloseable cerrable)
+                cerrable.close();
+        }
+    }
+}
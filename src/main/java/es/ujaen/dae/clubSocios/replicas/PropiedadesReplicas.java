@@ -0,0 +1,28 @@
+package es.ujaen.dae.clubSocios.replicas;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuración de las réplicas de lectura (prefijo "clubsocios.replicas").
+ *
+ * @param habilitadas           activa el enrutado; si no, toda la aplicación usa spring.datasource
+ * @param fuentes               réplicas a las que se envían las transacciones de sólo lectura
+ * @param retrasoMaximo         retraso de replicación a partir del cual una réplica deja de recibir lecturas
+ * @param intervaloComprobacion cada cuánto se mide el retraso de las réplicas
+ * @param consultaRetraso       consulta que devuelve el retraso en segundos (columna Seconds_Behind_Source o la primera)
+ */
+@ConfigurationProperties(prefix = "clubsocios.replicas")
+public record PropiedadesReplicas(
+        @DefaultValue("false") boolean habilitadas,
+        @DefaultValue List<Replica> fuentes,
+        @DefaultValue("5s") Duration retrasoMaximo,
+        @DefaultValue("5s") Duration intervaloComprobacion,
+        @DefaultValue("SHOW REPLICA STATUS") String consultaRetraso) {
+
+    public record Replica(String url, String username, String password) {
+    }
+}
@@ -0,0 +1,9 @@
+package es.ujaen.dae.clubSocios.repositorios;
+
+import java.time.LocalDate;
+
+/**
+ * Plazo de inscripción de una actividad, sin cargar la entidad (ver {@link RepositorioActividad#pendientesDeAsignacion}).
+ */
+public record PlazoInscripcion(Long actividadId, LocalDate fechaInicioInscripcion, LocalDate fechaFinInscripcion) {
+}
@@ -2,17 +2,23 @@ package es.ujaen.dae.clubSocios.repositorios;
 
 import es.ujaen.dae.clubSocios.entidades.Actividad;
 import es.ujaen.dae.clubSocios.entidades.Solicitud;
+import es.ujaen.dae.clubSocios.enums.EstrategiaBloqueo;
 import es.ujaen.dae.clubSocios.excepciones.ActividadYaRegistrada;
 import es.ujaen.dae.clubSocios.excepciones.FechaNoValida;
 import es.ujaen.dae.clubSocios.excepciones.SolicitudNoExiste;
 import es.ujaen.dae.clubSocios.excepciones.SolicitudYaRealizada;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.PersistenceContext;
+import org.hibernate.LockOptions;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
 
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -42,6 +48,108 @@ public class RepositorioActividad {
         );
     }
 
+    /**
+     * Busca una actividad sin inicializar su colección de solicitudes.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Optional<Actividad> buscarPorIdSinSolicitudes(Long id) {
+        return Optional.ofNullable(em.find(Actividad.class, id));
+    }
+
+    /**
+     * Carga una actividad con sus solicitudes para modificarla, protegida según la estrategia indicada.
+     * Con PESIMISTA y SALTAR_BLOQUEADAS se bloquea sólo la fila de la actividad (SELECT ... FOR UPDATE) hasta el final
+     * de la transacción, y las solicitudes se leen después, sin bloqueo. Debe llamarse dentro de una transacción.
+     *
+     * @param espera tiempo máximo de espera por el bloqueo con PESIMISTA. Hibernate lo traduce a FOR UPDATE WAIT
+     *               donde la base de datos lo admite; en MySQL manda innodb_lock_wait_timeout
+     * @throws CannotAcquireLockException si con SALTAR_BLOQUEADAS otra transacción tiene bloqueada la actividad
+     *         (con PESIMISTA, si se agota la espera, la base de datos lanza una PessimisticLockingFailureException)
+     */
+    public Optional<Actividad> buscarPorIdParaActualizar(Long id, EstrategiaBloqueo estrategia, Duration espera) {
+        if (estrategia == EstrategiaBloqueo.OPTIMISTA)
+            return buscarPorId(id);
+
+        // Las solicitudes se cargan ya, como en buscarPorId
+        Optional<Actividad> actividad = buscarPorIdSinSolicitudesParaActualizar(id, estrategia, espera);
+        actividad.ifPresent(a -> a.getSolicitudes().size());
+        return actividad;
+    }
+
+    /**
+     * Como {@link #buscarPorIdParaActualizar}, pero sin cargar las solicitudes. Con OPTIMISTA no bloquea nada.
+     */
+    public Optional<Actividad> buscarPorIdSinSolicitudesParaActualizar(Long id, EstrategiaBloqueo estrategia, Duration espera) {
+        if (estrategia == EstrategiaBloqueo.OPTIMISTA)
+            return buscarPorIdSinSolicitudes(id);
+
+        int tiempoEspera = estrategia == EstrategiaBloqueo.SALTAR_BLOQUEADAS
+                ? LockOptions.SKIP_LOCKED
+                : (int) espera.toMillis();
+        Optional<Actividad> actividad = em.createQuery("select a from Actividad a where a.id = :id", Actividad.class)
+                .setParameter("id", id)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .setHint("jakarta.persistence.lock.timeout", tiempoEspera)
+                .getResultStream()
+                .findFirst();
+
+        if (actividad.isEmpty() && estrategia == EstrategiaBloqueo.SALTAR_BLOQUEADAS && buscarPorIdSinSolicitudes(id).isPresent())
+            throw new CannotAcquireLockException("La actividad " + id + " está bloqueada por otra inscripción");
+
+        return actividad;
+    }
+
+    /**
+     * Estrategia de bloqueo propia de la actividad, si tiene una.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Optional<EstrategiaBloqueo> estrategiaBloqueo(Long id) {
+        return em.createQuery("select a.estrategiaBloqueo from Actividad a where a.id = :id", EstrategiaBloqueo.class)
+                .setParameter("id", id)
+                .getResultStream()
+                .filter(Objects::nonNull)
+                .findFirst();
+    }
+
+    /**
+     * Ids de las actividades de una temporada cuyo período de inscripción terminó antes de la fecha indicada
+     * y a las que aún no se ha hecho la asignación de fin de inscripción.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<Long> idsConInscripcionTerminada(Long temporadaId, LocalDate fecha) {
+        return em.createQuery("select a.id from Actividad a where a.temporada.temporadaId = :temporadaId " +
+                        "and a.fechaFinInscripcion < :fecha and a.asignacionRealizada = false order by a.id", Long.class)
+                .setParameter("temporadaId", temporadaId)
+                .setParameter("fecha", fecha)
+                .getResultList();
+    }
+
+    /**
+     * Plazos de inscripción de las actividades que aún no se han celebrado y a las que no se ha hecho la asignación
+     * de fin de inscripción. Sólo se leen el id y las fechas, sin cargar las entidades.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<PlazoInscripcion> pendientesDeAsignacion(LocalDate hoy) {
+        return em.createQuery("select new es.ujaen.dae.clubSocios.repositorios.PlazoInscripcion(" +
+                        "a.id, a.fechaInicioInscripcion, a.fechaFinInscripcion) from Actividad a " +
+                        "where a.asignacionRealizada = false and a.fechaCelebracion >= :hoy", PlazoInscripcion.class)
+                .setParameter("hoy", hoy)
+                .getResultList();
+    }
+
+    /**
+     * Marca la actividad como asignada con un UPDATE condicionado: sólo una transacción, de esta instancia o de otra,
+     * consigue marcarla.
+     *
+     * @return true si la actividad estaba sin asignar y queda marcada por esta transacción
+     */
+    public boolean marcarAsignacionRealizada(Long actividadId) {
+        return em.createQuery("update Actividad a set a.asignacionRealizada = true " +
+                        "where a.id = :actividadId and a.asignacionRealizada = false")
+                .setParameter("actividadId", actividadId)
+                .executeUpdate() == 1;
+    }
+
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<Actividad> buscarPorNombre(String nombre) {
         return em.createQuery("select a from Actividad a where " +
@@ -50,6 +158,47 @@ public class RepositorioActividad {
                 .getResultList();
     }
 
+    /**
+     * Busca las actividades de una temporada cuyo título contiene el texto dado, sin distinguir mayúsculas ni tildes.
+     * Es una búsqueda por subcadena (recorre la tabla); para detectar duplicados se usa {@link #existeTitulo}.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<Actividad> buscarPorNombre(Long temporadaId, String texto) {
+        return em.createQuery("select a from Actividad a where a.temporada.temporadaId = :temporadaId " +
+                        "and a.tituloNormalizado like :texto escape '!' order by a.id", Actividad.class)
+                .setParameter("temporadaId", temporadaId)
+                .setParameter("texto", "%" + escaparLike(Actividad.normalizarTitulo(texto)) + "%")
+                .getResultList();
+    }
+
+    // Los comodines de LIKE que escriba el usuario se buscan literalmente
+    private static String escaparLike(String texto) {
+        return texto.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * Actividades guardadas antes de existir la columna titulo_normalizado, que la tienen a null.
+     */
+    public List<Actividad> sinTituloNormalizado() {
+        return em.createQuery("select a from Actividad a where a.tituloNormalizado is null order by a.id", Actividad.class)
+                .getResultList();
+    }
+
+    /**
+     * Comprueba si ya existe en la temporada una actividad con el mismo título normalizado.
+     * Consulta por igualdad sobre el índice único (temporada_id, titulo_normalizado).
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public boolean existeTitulo(Long temporadaId, String titulo) {
+        return !em.createQuery("select a.id from Actividad a where a.temporada.temporadaId = :temporadaId " +
+                        "and a.tituloNormalizado = :titulo", Long.class)
+                .setParameter("temporadaId", temporadaId)
+                .setParameter("titulo", Actividad.normalizarTitulo(titulo))
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
+    }
+
     public void guardarActividad(Actividad actividad) {
 
         try {
@@ -60,7 +209,25 @@ public class RepositorioActividad {
     }
 
     public Actividad actualizar(Actividad actividad) {
-        return em.merge(actividad);
+        return conIndicesNuevos(em.merge(actividad));
+    }
+
+    /**
+     * Actualiza una actividad que puede venir de fuera del contexto de persistencia junto con su lista de solicitudes.
+     * Si no está gestionada, antes se carga con sus solicitudes en una sola consulta; si no, merge resolvería
+     * las solicitudes de la colección una a una.
+     */
+    public Actividad actualizarConSolicitudes(Actividad actividad) {
+        if (!em.contains(actividad))
+            buscarPorId(actividad.getId());
+
+        return conIndicesNuevos(em.merge(actividad));
+    }
+
+    // merge copia la lista de solicitudes en la actividad gestionada sin pasar por sus métodos
+    private static Actividad conIndicesNuevos(Actividad gestionada) {
+        gestionada.olvidarIndices();
+        return gestionada;
     }
 
     public void eliminar(Actividad actividad) {
@@ -107,6 +274,95 @@ public class RepositorioActividad {
         em.remove(solicitudGestionada);
     }
 
+    /**
+     * Página de las solicitudes de una actividad en orden de llegada, paginando por clave (fechaSolicitud, solicitudId).
+     * Sólo lee las solicitudes de la página, no la colección completa.
+     *
+     * @param actividadId id de la actividad
+     * @param despuesDeFecha fecha de la última solicitud de la página anterior, o null para la primera página
+     * @param despuesDeId id de la última solicitud de la página anterior
+     * @param limite número máximo de solicitudes a devolver
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<Solicitud> paginaSolicitudes(Long actividadId, LocalDateTime despuesDeFecha, Long despuesDeId, int limite) {
+        var consulta = despuesDeFecha == null
+                ? em.createQuery("select s from Solicitud s join fetch s.socio " +
+                        "where s.actividad.id = :actividadId order by s.fechaSolicitud, s.solicitudId", Solicitud.class)
+                : em.createQuery("select s from Solicitud s join fetch s.socio " +
+                        "where s.actividad.id = :actividadId and (s.fechaSolicitud > :fecha or (s.fechaSolicitud = :fecha and s.solicitudId > :id)) " +
+                        "order by s.fechaSolicitud, s.solicitudId", Solicitud.class)
+                    .setParameter("fecha", despuesDeFecha)
+                    .setParameter("id", despuesDeId);
+
+        return consulta.setParameter("actividadId", actividadId)
+                .setMaxResults(limite)
+                .getResultList();
+    }
+
+    /**
+     * Busca la solicitud de un socio en una actividad por el índice único (actividad_id, socioId),
+     * sin cargar el resto de solicitudes de la actividad.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Optional<Solicitud> buscarSolicitudSocio(Long actividadId, String socioId) {
+        return em.createQuery("select s from Solicitud s join fetch s.socio " +
+                        "where s.actividad.id = :actividadId and s.socio.socioId = :socioId", Solicitud.class)
+                .setParameter("actividadId", actividadId)
+                .setParameter("socioId", socioId)
+                .getResultStream()
+                .findFirst();
+    }
+
+    /**
+     * Comprueba si el socio ya tiene una solicitud en la actividad sin cargar la colección de solicitudes.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public boolean existeSolicitudSocio(Long actividadId, String socioId) {
+        return !em.createQuery("select s.solicitudId from Solicitud s " +
+                        "where s.actividad.id = :actividadId and s.socio.socioId = :socioId", Long.class)
+                .setParameter("actividadId", actividadId)
+                .setParameter("socioId", socioId)
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
+    }
+
+    /**
+     * Reserva una plaza de la actividad con un único UPDATE condicionado, sin cargar la actividad ni sus solicitudes.
+     * También incrementa la versión, para que una actualización optimista concurrente de la misma actividad detecte el cambio.
+     *
+     * @param actividadId id de la actividad
+     * @return true si se ha reservado la plaza, false si ya no quedaban plazas
+     */
+    public boolean reservarPlaza(Long actividadId) {
+        return em.createQuery("update Actividad a set a.plazasDisponibles = a.plazasDisponibles - 1, a.version = a.version + 1 " +
+                        "where a.id = :actividadId and a.plazasDisponibles > 0")
+                .setParameter("actividadId", actividadId)
+                .executeUpdate() == 1;
+    }
+
+    /**
+     * Plazas libres de la actividad según la base de datos. Dentro de la transacción que ha hecho
+     * {@link #reservarPlaza}, incluye ya esa reserva.
+     */
+    public int plazasDisponibles(Long actividadId) {
+        return em.createQuery("select a.plazasDisponibles from Actividad a where a.id = :actividadId", Integer.class)
+                .setParameter("actividadId", actividadId)
+                .getSingleResult();
+    }
+
+    /**
+     * Inserta una solicitud sin inicializar la colección de solicitudes de su actividad.
+     * La relación queda guardada en la propia solicitud (columna actividad_id).
+     * La inserción se lanza ya (flush): si otra transacción ha registrado a la vez la solicitud del mismo socio,
+     * la restricción única uk_solicitud_actividad_socio salta aquí como DataIntegrityViolationException,
+     * y no al confirmar.
+     */
+    public void insertarSolicitud(Solicitud solicitud) {
+        em.persist(solicitud);
+        em.flush();
+    }
+
     public Solicitud actualizarSolicitud(Solicitud solicitud) {
         return em.merge(solicitud);
     }
@@ -0,0 +1,102 @@
+package es.ujaen.dae.clubSocios.repositorios;
+
+import es.ujaen.dae.clubSocios.entidades.RespuestaIdempotente;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Transactional
+@Repository
+public class RepositorioRespuestaIdempotente {
+    // Caché clave -> respuesta completada, acotada y con caducidad (application.conf)
+    public static final String CACHE_RESPUESTAS_IDEMPOTENTES = "respuestasIdempotentes";
+
+    @PersistenceContext
+    EntityManager em;
+
+    /**
+     * Busca la respuesta guardada para una clave. Sólo quedan en la caché {@value #CACHE_RESPUESTAS_IDEMPOTENTES}
+     * las respuestas completadas, que ya no cambian.
+     * No es de sólo lectura a propósito: así se lee en la primaria, y no en una réplica que aún no tenga
+     * la reserva o la respuesta recién guardadas (la repetición acabaría en PeticionEnCurso o en otra reserva).
+     */
+    @Cacheable(cacheNames = CACHE_RESPUESTAS_IDEMPOTENTES, key = "#clave", unless = "#result == null || !#result.completada()")
+    public Optional<RespuestaIdempotente> buscar(String clave, LocalDateTime creadaDespuesDe) {
+        return em.createQuery("select r from RespuestaIdempotente r where r.clave = :clave and r.creada > :limite",
+                        RespuestaIdempotente.class)
+                .setParameter("clave", clave)
+                .setParameter("limite", creadaDespuesDe)
+                .getResultStream()
+                .findFirst();
+    }
+
+    /**
+     * Reserva la clave para una petición que empieza, en una transacción propia para que otras peticiones
+     * con la misma clave la vean en seguida. Si la clave ya existe, falla la clave primaria.
+     * Antes borra la respuesta caducada que pudiera haber con esa clave.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void reservar(RespuestaIdempotente respuesta, LocalDateTime caducadaAntesDe) {
+        em.createQuery("delete from RespuestaIdempotente r where r.clave = :clave and r.creada <= :limite")
+                .setParameter("clave", respuesta.getClave())
+                .setParameter("limite", caducadaAntesDe)
+                .executeUpdate();
+        em.persist(respuesta);
+        em.flush();
+    }
+
+    /**
+     * Retoma la reserva de una petición que no terminó (la instancia se cayó antes de guardar la respuesta):
+     * la vuelve a reservar con la fecha actual, sólo si sigue sin completar y se reservó antes de la fecha indicada.
+     * Es una única actualización en una transacción propia, así que sólo una de las peticiones que lo intenten a la vez la consigue.
+     *
+     * @return true si la reserva es ahora de quien llama
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean retomar(String clave, LocalDateTime reservadaAntesDe) {
+        return em.createQuery("update RespuestaIdempotente r set r.creada = :ahora " +
+                        "where r.clave = :clave and r.estado is null and r.creada <= :limite")
+                .setParameter("ahora", LocalDateTime.now())
+                .setParameter("clave", clave)
+                .setParameter("limite", reservadaAntesDe)
+                .executeUpdate() == 1;
+    }
+
+    /**
+     * Guarda la respuesta. Si la reserva ya no existe (se liberó o caducó), no hay nada que guardar.
+     */
+    @CachePut(cacheNames = CACHE_RESPUESTAS_IDEMPOTENTES, key = "#clave", unless = "#result == null")
+    public Optional<RespuestaIdempotente> completar(String clave, int estado, String cuerpo) {
+        RespuestaIdempotente respuesta = em.find(RespuestaIdempotente.class, clave);
+        if (respuesta == null)
+            return Optional.empty();
+        respuesta.completar(estado, cuerpo);
+        return Optional.of(respuesta);
+    }
+
+    @CacheEvict(cacheNames = CACHE_RESPUESTAS_IDEMPOTENTES, key = "#clave")
+    public void liberar(String clave) {
+        em.createQuery("delete from RespuestaIdempotente r where r.clave = :clave")
+                .setParameter("clave", clave)
+                .executeUpdate();
+    }
+
+    /**
+     * Borra las respuestas anteriores a la fecha indicada (la caché las descarta por su cuenta).
+     *
+     * @return número de respuestas borradas
+     */
+    public int borrarCaducadas(LocalDateTime caducadaAntesDe) {
+        return em.createQuery("delete from RespuestaIdempotente r where r.creada <= :limite")
+                .setParameter("limite", caducadaAntesDe)
+                .executeUpdate();
+    }
+}
@@ -7,17 +7,22 @@ import es.ujaen.dae.clubSocios.excepciones.SocioNoExiste;
 import es.ujaen.dae.clubSocios.excepciones.SocioYaRegistrado;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Transactional
 @Repository
 public class RepositorioSocio {
+    // Caché email -> UserDetails del socio (security.CacheUsuarios), que se vacía al modificar o borrar el socio
+    public static final String CACHE_USUARIOS = "usuarios";
+
     @PersistenceContext
     EntityManager em;
 
@@ -26,6 +31,16 @@ public class RepositorioSocio {
         return Optional.ofNullable(em.find(Socio.class, id));
     }
 
+    /**
+     * Socios con los emails dados, leídos con una sola consulta. Los emails que no existen no aparecen en el resultado.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<Socio> buscarPorIds(Collection<String> ids) {
+        return em.createQuery("select s from Socio s where s.socioId in :ids", Socio.class)
+                .setParameter("ids", ids)
+                .getResultList();
+    }
+
     public void crear(Socio socio) {
         try {
             em.persist(socio);
@@ -35,10 +50,12 @@ public class RepositorioSocio {
 
     }
 
+    @CacheEvict(cacheNames = CACHE_USUARIOS, key = "#socio.socioId")
     public Socio actualizar(Socio socio) {
         return em.merge(socio);
     }
 
+    @CacheEvict(cacheNames = CACHE_USUARIOS, key = "#socio.socioId")
     public void eliminar(Socio socio) {
         em.remove(em.merge(socio));
     }
@@ -53,6 +70,20 @@ public class RepositorioSocio {
         return em.createQuery("select s from Socio s", Socio.class).getResultList();
     }
 
+    /**
+     * Pone el estado de cuota de todos los socios al indicado con una única sentencia UPDATE,
+     * sin cargar los socios en el contexto de persistencia.
+     *
+     * @param estadoCuota nuevo estado de cuota
+     * @return número de socios modificados
+     */
+    @CacheEvict(cacheNames = CACHE_USUARIOS, allEntries = true)
+    public int actualizarEstadoCuotaTodos(EstadoCuota estadoCuota) {
+        return em.createQuery("update Socio s set s.estadoCuota = :estado where s.estadoCuota <> :estado")
+                .setParameter("estado", estadoCuota)
+                .executeUpdate();
+    }
+
     public void crearSolicitud(Solicitud solicitud) {
         em.persist(solicitud);
     }
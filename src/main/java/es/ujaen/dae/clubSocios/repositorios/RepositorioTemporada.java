@@ -3,10 +3,12 @@ package es.ujaen.dae.clubSocios.repositorios;
 import es.ujaen.dae.clubSocios.entidades.Actividad;
 import es.ujaen.dae.clubSocios.entidades.Temporada;
 import es.ujaen.dae.clubSocios.excepciones.TemporadaYaRegistrada;
+import es.ujaen.dae.clubSocios.rest.dto.DTOActividad;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
@@ -20,6 +22,8 @@ import java.util.Optional;
 @Transactional
 @Repository
 public class RepositorioTemporada {
+    // Caché año -> temporada. También guarda los años sin temporada (caché negativa).
+    public static final String CACHE_TEMPORADAS_POR_ANIO = "temporadasPorAnio";
 
     @PersistenceContext
     EntityManager em;
@@ -35,10 +39,22 @@ public class RepositorioTemporada {
         return Optional.ofNullable(em.find(Temporada.class, id));
     }
 
-    public Optional<Temporada> buscarPorAnio(int anio) {
-        return Optional.ofNullable(em.createQuery("select t from Temporada t where t.anio =: anio", Temporada.class)
+    /**
+     * Busca el id de la temporada de un año. El resultado, también si no existe, queda en la caché
+     * {@value #CACHE_TEMPORADAS_POR_ANIO} hasta que se crea, actualiza o elimina la temporada de ese año.
+     * Se guarda el id y no la entidad para no compartir entre hilos una temporada separada con colecciones perezosas;
+     * la temporada se carga después con {@link #buscarPorId}, que usa la caché de segundo nivel.
+     *
+     * @param anio año de la temporada
+     * @return Optional con el id de la temporada o vacío si no hay temporada ese año
+     */
+    @Cacheable(cacheNames = CACHE_TEMPORADAS_POR_ANIO)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Optional<Long> buscarIdPorAnio(int anio) {
+        return em.createQuery("select t.temporadaId from Temporada t where t.anio = :anio", Long.class)
                 .setParameter("anio", anio)
-                .getSingleResult());
+                .getResultStream()
+                .findFirst();
     }
 
     /**
@@ -46,6 +62,7 @@ public class RepositorioTemporada {
      *
      * @param temporada la temporada a guardar
      */
+    @CacheEvict(cacheNames = CACHE_TEMPORADAS_POR_ANIO, key = "#temporada.anio")
     public void crear(Temporada temporada) {
         //Si se encuentra una temporada con el mismo año, no la va a registrar otra vez, no tiene sentido.
         if (em.createQuery("SELECT COUNT(t) FROM Temporada t WHERE t.anio = :anio", Long.class)
@@ -61,6 +78,7 @@ public class RepositorioTemporada {
      * @param temporada la temporada a actualizar
      * @return la temporada actualizada
      */
+    @CacheEvict(cacheNames = CACHE_TEMPORADAS_POR_ANIO, key = "#temporada.anio")
     public Temporada actualizar(Temporada temporada) {
         return em.merge(temporada);
     }
@@ -70,6 +88,7 @@ public class RepositorioTemporada {
      *
      * @param temporada la temporada a eliminar
      */
+    @CacheEvict(cacheNames = CACHE_TEMPORADAS_POR_ANIO, key = "#temporada.anio")
     public void eliminar(Temporada temporada) {
         em.remove(em.merge(temporada));
     }
@@ -93,10 +112,44 @@ public class RepositorioTemporada {
     @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public List<Actividad> obtenerActividadesDeTemporada(Long id) {
         return em.createQuery(
-                        "select a from Temporada t join t.actividades a where t.temporadaId = :id order by a.id ASC",
+                        "select a from Actividad a where a.temporada.temporadaId = :id order by a.id ASC",
                         Actividad.class)
                 .setParameter("id", id)
                 .getResultList();
     }
 
+    /**
+     * Obtiene las actividades de una temporada directamente como DTOs, con una proyección por constructor.
+     * No crea entidades gestionadas en el contexto de persistencia, por lo que es más barato en memoria
+     * que {@link #obtenerActividadesDeTemporada} para listados.
+     *
+     * @param id el ID de la temporada
+     * @return lista de DTOs de las actividades de la temporada ordenadas por ID
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<DTOActividad> obtenerDtoActividadesDeTemporada(Long id) {
+        return obtenerDtoActividadesDeTemporada(id, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Página de las actividades de una temporada, proyectadas a DTO, paginando por clave (id).
+     *
+     * @param id el ID de la temporada
+     * @param despuesDe id de la última actividad de la página anterior, o null para la primera página
+     * @param limite número máximo de actividades a devolver
+     * @return lista de DTOs de las actividades con id mayor que despuesDe, ordenadas por ID
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<DTOActividad> obtenerDtoActividadesDeTemporada(Long id, Long despuesDe, int limite) {
+        return em.createQuery(
+                        "select new es.ujaen.dae.clubSocios.rest.dto.DTOActividad(a.id, a.titulo, a.descripcion, a.precio, " +
+                                "a.plazasDisponibles, a.totalPlazas, a.fechaInicioInscripcion, a.fechaFinInscripcion, a.fechaCelebracion) " +
+                                "from Actividad a where a.temporada.temporadaId = :id and a.id > :despuesDe order by a.id ASC",
+                        DTOActividad.class)
+                .setParameter("id", id)
+                .setParameter("despuesDe", despuesDe == null ? 0L : despuesDe)
+                .setMaxResults(limite)
+                .getResultList();
+    }
+
 }
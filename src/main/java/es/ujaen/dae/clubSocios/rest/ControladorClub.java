@@ -1,29 +1,49 @@
 package es.ujaen.dae.clubSocios.rest;
 
 import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.RespuestaIdempotente;
 import es.ujaen.dae.clubSocios.entidades.Solicitud;
 import es.ujaen.dae.clubSocios.entidades.Temporada;
 import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import es.ujaen.dae.clubSocios.enums.EstrategiaBloqueo;
 import es.ujaen.dae.clubSocios.excepciones.*;
 import es.ujaen.dae.clubSocios.rest.dto.*;
 import es.ujaen.dae.clubSocios.entidades.Socio;
-import es.ujaen.dae.clubSocios.security.Autenticacion;
+import es.ujaen.dae.clubSocios.security.ServicioTokens;
+import es.ujaen.dae.clubSocios.servicios.AsignacionTemporada;
+import es.ujaen.dae.clubSocios.servicios.SalaEspera;
 import es.ujaen.dae.clubSocios.servicios.ServicioClub;
+import es.ujaen.dae.clubSocios.servicios.ServicioEstadisticas;
+import es.ujaen.dae.clubSocios.servicios.ServicioIdempotencia;
+import jakarta.servlet.http.HttpServletRequest;
 
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
 import org.springframework.web.bind.annotation.*;
 
-import java.security.Principal;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static es.ujaen.dae.clubSocios.util.UtilList.EJEMPLO_SOCIO;
 
 @RestController
 @RequestMapping("/clubsocios")
 public class ControladorClub {
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final int LONGITUD_MAXIMA_CLAVE_IDEMPOTENCIA = 255;
+
     @Autowired
     Mapeador mapeador;
 
@@ -31,7 +51,19 @@ public class ControladorClub {
     ServicioClub servicioClub;
 
     @Autowired
-    Autenticacion autenticacion;
+    ServicioEstadisticas servicioEstadisticas;
+
+    @Autowired
+    SalaEspera salaEspera;
+
+    @Autowired
+    ServicioIdempotencia servicioIdempotencia;
+
+    @Autowired
+    AsignacionTemporada asignacionTemporada;
+
+    @Autowired
+    ServicioTokens servicioTokens;
 
     // Si hay alguna excepción de bean validation, salta el handler
     @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
@@ -70,6 +102,17 @@ public class ControladorClub {
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
+    //Token de sesión para el socio identificado con HTTP Basic (todos los socios). Se envía después en la cabecera
+    //"Authorization: Bearer token" hasta que caduque; no se renueva con otro token, hay que volver a dar la contraseña
+    @PostMapping("/autenticacion")
+    public ResponseEntity<DTOToken> emitirToken(Authentication usuario) {
+        if (usuario instanceof PreAuthenticatedAuthenticationToken)
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        ServicioTokens.Token token = servicioTokens.emitir(usuario.getName(), usuario.getAuthorities());
+        return ResponseEntity.ok(new DTOToken(token.valor(), "Bearer", token.caducidad()));
+    }
+
     @GetMapping("/socios/{email}")
     public ResponseEntity<DTOSocio> buscarSocio(@PathVariable String email) {
         try{
@@ -108,14 +151,41 @@ public class ControladorClub {
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
-    //Obtener actividades de una temporada
+    //Obtener actividades de una temporada, paginadas por id (cursor de la página siguiente en la cabecera X-Siguiente-Cursor)
     @GetMapping("/temporadas/{anio}/actividades")
-    public ResponseEntity<List<DTOActividad>> obtenerActividades(@PathVariable int anio) {
-        List<Actividad> actividades;
+    public ResponseEntity<List<DTOActividad>> obtenerActividades(@PathVariable int anio,
+                                                                 @RequestParam(required = false) String cursor,
+                                                                 @RequestParam(required = false) Integer limite) {
+        List<DTOActividad> actividades;
         Temporada temporada;
+        int tamPagina = CursorPaginacion.tamPagina(limite);
         try {
+            Long despuesDe = cursor == null ? null : Long.valueOf(CursorPaginacion.decodificar(cursor, 1)[0]);
             temporada = servicioClub.buscarTemporada(anio).orElseThrow(() -> new TemporadaNoEncontrada("Temporada " + anio + " no encontrada"));
-            actividades = servicioClub.obtenerActividadesTemporada(temporada.getTemporadaId());
+            // Se pide un elemento de más para saber si hay página siguiente
+            actividades = servicioClub.listadoActividadesTemporada(temporada.getTemporadaId(), despuesDe, tamPagina + 1);
+        } catch (TemporadaNoEncontrada e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        if (actividades.size() <= tamPagina)
+            return ResponseEntity.ok(actividades);
+
+        actividades = actividades.subList(0, tamPagina);
+        return ResponseEntity.ok()
+                .header(CursorPaginacion.CABECERA, CursorPaginacion.codificar(actividades.get(tamPagina - 1).id()))
+                .body(actividades);
+    }
+
+    //Buscar actividades de una temporada por parte del título
+    @GetMapping("/temporadas/{anio}/actividades/busqueda")
+    public ResponseEntity<List<DTOActividad>> buscarActividadesPorTitulo(@PathVariable int anio, @RequestParam String texto) {
+        List<Actividad> actividades;
+        try {
+            Temporada temporada = servicioClub.buscarTemporada(anio).orElseThrow(() -> new TemporadaNoEncontrada("Temporada " + anio + " no encontrada"));
+            actividades = servicioClub.buscarActividadPorNombre(temporada.getTemporadaId(), texto);
         } catch (TemporadaNoEncontrada e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
@@ -135,19 +205,28 @@ public class ControladorClub {
         return ResponseEntity.ok(mapeador.dto(actividad));
     }
 
-    //Solicitar participación en una actividad (user)
+    //Solicitar participación en una actividad (user). Con cabecera Idempotency-Key, los reintentos devuelven la primera respuesta
     @PostMapping("/temporadas/{anio}/actividades/{idact}/solicitudes")
     public ResponseEntity<DTOSolicitud> crearSolicitud(@PathVariable int anio, @PathVariable Long idact,
-                                                       @RequestParam String emailSocio, @RequestParam int numAcom) {
-        Solicitud solicitud;
+                                                       @RequestParam String emailSocio, @RequestParam int numAcom,
+                                                       @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String claveIdempotencia,
+                                                       HttpServletRequest peticion) {
+        return idempotente(claveIdempotencia, peticion, () -> registrarSolicitud(anio, idact, emailSocio, numAcom));
+    }
+
+    private ResponseEntity<DTOSolicitud> registrarSolicitud(int anio, Long idact, String emailSocio, int numAcom) {
+        // Actividad agotada: se rechaza sin consultar la base de datos
+        if (servicioClub.actividadAgotada(idact))
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+
         try {
             //Antes de nada, voy a ver si lo solicita alguien logeado, porque si no no tiene sentido buscar nada.
             Socio socio = servicioClub.buscarSocio(emailSocio).orElseThrow(SocioNoExiste::new);
 
             servicioClub.buscarTemporada(anio).orElseThrow(() -> new TemporadaNoEncontrada(""));
-            servicioClub.buscarActividad(idact).orElseThrow(() -> new ActividadNoEncontrada(""));
 
-            servicioClub.registrarSolicitud(EJEMPLO_SOCIO, socio, idact, numAcom);
+            // Comprueba que existe la actividad sin cargar sus solicitudes (ActividadNoEncontrada)
+            servicioClub.registrarSolicitudConReserva(EJEMPLO_SOCIO, socio, idact, numAcom);
 
         } catch (TemporadaNoEncontrada | ActividadNoEncontrada | SocioNoExiste | SolicitudNoExiste e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -155,25 +234,129 @@ public class ControladorClub {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         } catch (SolicitudYaRealizada e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (ConflictoDeConcurrenciaException e) {
+            // No se consiguió el bloqueo de la actividad tras los reintentos (estrategia PESIMISTA o SALTAR_BLOQUEADAS)
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
         }
 
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
-    //Modificar solicitud (user)
+    //Fijar la estrategia de bloqueo de las inscripciones en una actividad (admin); sin estrategia, vuelve a la general
+    @PutMapping("/temporadas/{anio}/actividades/{idact}/estrategia-bloqueo")
+    public ResponseEntity<Void> cambiarEstrategiaBloqueo(@PathVariable int anio, @PathVariable Long idact,
+                                                         @RequestParam(required = false) EstrategiaBloqueo estrategia) {
+        try {
+            servicioClub.buscarTemporada(anio).orElseThrow(() -> new TemporadaNoEncontrada(""));
+            servicioClub.cambiarEstrategiaBloqueo(EJEMPLO_SOCIO, idact, estrategia);
+        } catch (TemporadaNoEncontrada | ActividadNoEncontrada e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        return ResponseEntity.noContent().build();
+    }
+
+    //Pedir turno en la sala de espera de una actividad (user): la solicitud se registra más tarde, por orden de llegada
+    @PostMapping("/temporadas/{anio}/actividades/{idact}/sala-espera")
+    public ResponseEntity<DTOTurno> pedirTurno(@PathVariable int anio, @PathVariable Long idact,
+                                               @RequestParam String emailSocio, @RequestParam int numAcom,
+                                               Authentication usuarioAutenticado) {
+        // Un socio solo puede pedir turno para sí mismo
+        if (!esAdmin(usuarioAutenticado) && !emailSocio.equals(usuarioAutenticado.getName()))
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        if (servicioClub.actividadAgotada(idact))
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+
+        SalaEspera.Turno turno;
+        try {
+            Socio socio = servicioClub.buscarSocio(emailSocio).orElseThrow(SocioNoExiste::new);
+            servicioClub.buscarTemporada(anio).orElseThrow(() -> new TemporadaNoEncontrada(""));
+            servicioClub.buscarActividadSinSolicitudes(idact).orElseThrow(() -> new ActividadNoEncontrada(""));
+
+            turno = salaEspera.pedirTurno(idact, socio, numAcom);
+        } catch (TemporadaNoEncontrada | ActividadNoEncontrada | SocioNoExiste e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (SalaEsperaLlena e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/clubsocios/sala-espera/" + turno.getId()))
+                .body(dtoTurno(turno));
+    }
+
+    //Consultar un turno de la sala de espera: posición en la cola y, cuando se ha atendido, el resultado
+    @GetMapping("/sala-espera/{idTurno}")
+    public ResponseEntity<DTOTurno> consultarTurno(@PathVariable String idTurno, Authentication usuarioAutenticado) {
+        Optional<SalaEspera.Turno> turno = salaEspera.buscarTurno(idTurno);
+        if (turno.isEmpty())
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+
+        // El turno solo lo ve su socio (o la dirección)
+        if (!esAdmin(usuarioAutenticado) && !turno.get().getSocioId().equals(usuarioAutenticado.getName()))
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        return ResponseEntity.ok(dtoTurno(turno.get()));
+    }
+
+    // Los roles ya están en la autenticación (HTTP Basic o token), sin volver a cargar el usuario
+    private static boolean esAdmin(Authentication usuarioAutenticado) {
+        return usuarioAutenticado.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN"));
+    }
+
+    private DTOTurno dtoTurno(SalaEspera.Turno turno) {
+        return new DTOTurno(turno.getId(), turno.getActividadId(), salaEspera.posicion(turno),
+                turno.getEstado(), turno.getMotivo(), turno.getSolicitudId());
+    }
+
+    //Asignar las plazas de todas las actividades de la temporada con el plazo de inscripción terminado (admin).
+    //Se hace en segundo plano: la respuesta indica dónde consultar el progreso
+    @PostMapping("/temporadas/{anio}/asignacion")
+    public ResponseEntity<DTOTrabajoAsignacion> asignarPlazasTemporada(@PathVariable int anio) {
+        AsignacionTemporada.Trabajo trabajo;
+        try {
+            trabajo = asignacionTemporada.lanzar(EJEMPLO_SOCIO, anio);
+        } catch (TemporadaNoEncontrada e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/clubsocios/asignaciones/" + trabajo.getId()))
+                .body(dtoTrabajo(trabajo));
+    }
+
+    //Progreso de una asignación de temporada (admin)
+    @GetMapping("/asignaciones/{idTrabajo}")
+    public ResponseEntity<DTOTrabajoAsignacion> consultarAsignacion(@PathVariable String idTrabajo) {
+        return asignacionTemporada.buscarTrabajo(idTrabajo)
+                .map(trabajo -> ResponseEntity.ok(dtoTrabajo(trabajo)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    private static DTOTrabajoAsignacion dtoTrabajo(AsignacionTemporada.Trabajo trabajo) {
+        return new DTOTrabajoAsignacion(trabajo.getId(), trabajo.getAnio(), trabajo.terminado(), trabajo.getActividades(),
+                trabajo.getCompletadas(), trabajo.getSinPlazas(), trabajo.getYaAsignadas(), trabajo.getFallidas(),
+                trabajo.getPlazasAsignadas(), trabajo.duracion().toMillis(), trabajo.actividadesPorSegundo(), trabajo.getErrores());
+    }
+
+    //Modificar solicitud (user). Con cabecera Idempotency-Key, los reintentos devuelven la primera respuesta
     @PutMapping("/temporadas/{anio}/actividades/{idact}/solicitudes")
     public ResponseEntity<DTOSolicitud> modificarSolicitud(@PathVariable int anio, @PathVariable Long idact,
-                                                           @RequestParam String emailSocio, @RequestParam int nuevosAcom) {
+                                                           @RequestParam String emailSocio, @RequestParam int nuevosAcom,
+                                                           @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String claveIdempotencia,
+                                                           HttpServletRequest peticion) {
+        return idempotente(claveIdempotencia, peticion, () -> cambiarAcompanantes(anio, idact, emailSocio, nuevosAcom));
+    }
+
+    private ResponseEntity<DTOSolicitud> cambiarAcompanantes(int anio, Long idact, String emailSocio, int nuevosAcom) {
         Solicitud solicitud;
         try {
             Temporada temporada = servicioClub.buscarTemporada(anio).orElseThrow(() -> new TemporadaNoEncontrada(""));
-            Actividad actividad = servicioClub.buscarActividad(idact).orElseThrow(() -> new ActividadNoEncontrada(""));
+            Actividad actividad = servicioClub.buscarActividadSinSolicitudes(idact).orElseThrow(() -> new ActividadNoEncontrada(""));
 
-            solicitud = servicioClub.revisarSolicitudes(EJEMPLO_SOCIO, idact)
-                                                .stream()
-                                                .filter(s -> s.getSocioId().equals(emailSocio))
-                                                .findAny()
-                                                .orElseThrow(SolicitudNoExiste::new);
+            solicitud = servicioClub.buscarSolicitudSocio(EJEMPLO_SOCIO, idact, emailSocio)
+                                    .orElseThrow(SolicitudNoExiste::new);
 
             solicitud = servicioClub.modificarSolicitud(solicitud, nuevosAcom);
 
@@ -184,6 +367,60 @@ public class ControladorClub {
         return ResponseEntity.ok(mapeador.dto(solicitud));
     }
 
+    /**
+     * Ejecuta la operación una sola vez por clave de idempotencia y usuario: si el cliente repite la petición
+     * con la misma clave (por ejemplo, tras perder la respuesta), recibe la respuesta guardada.
+     * Sin clave, la operación se ejecuta sin más. Las respuestas 5xx y las excepciones no se guardan,
+     * para que el cliente pueda reintentar.
+     */
+    private ResponseEntity<DTOSolicitud> idempotente(String claveIdempotencia, HttpServletRequest peticion,
+                                                     Supplier<ResponseEntity<DTOSolicitud>> operacion) {
+        if (claveIdempotencia == null)
+            return operacion.get();
+        if (claveIdempotencia.isBlank() || claveIdempotencia.length() > LONGITUD_MAXIMA_CLAVE_IDEMPOTENCIA)
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+
+        String usuario = peticion.getUserPrincipal() != null ? peticion.getUserPrincipal().getName() : "";
+        String clave = usuario + ":" + claveIdempotencia;
+
+        Optional<RespuestaIdempotente> guardada;
+        try {
+            guardada = servicioIdempotencia.reservar(clave, descripcion(peticion));
+        } catch (PeticionEnCurso e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (ClaveIdempotenciaReutilizada e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+        }
+
+        if (guardada.isPresent()) {
+            RespuestaIdempotente respuesta = guardada.get();
+            return ResponseEntity.status(respuesta.getEstado())
+                    .body(servicioIdempotencia.cuerpo(respuesta, DTOSolicitud.class));
+        }
+
+        ResponseEntity<DTOSolicitud> respuesta;
+        try {
+            respuesta = operacion.get();
+        } catch (RuntimeException e) {
+            servicioIdempotencia.liberar(clave);
+            throw e;
+        }
+
+        if (respuesta.getStatusCode().is5xxServerError())
+            servicioIdempotencia.liberar(clave);
+        else
+            servicioIdempotencia.completar(clave, respuesta.getStatusCode().value(), respuesta.getBody());
+        return respuesta;
+    }
+
+    // Método, ruta y parámetros ordenados: identifican la petición para detectar una clave reutilizada
+    private static String descripcion(HttpServletRequest peticion) {
+        String parametros = new TreeMap<>(peticion.getParameterMap()).entrySet().stream()
+                .map(parametro -> parametro.getKey() + "=" + Arrays.toString(parametro.getValue()))
+                .collect(Collectors.joining("&"));
+        return peticion.getMethod() + " " + peticion.getRequestURI() + "?" + parametros;
+    }
+
     //Borrar solicitud (user/admin)
     @DeleteMapping("/temporadas/{anio}/actividades/{idact}/solicitudes")
     public ResponseEntity<Void> borrarSolicitud(@PathVariable int anio, @PathVariable Long idact,
@@ -191,12 +428,9 @@ public class ControladorClub {
         try {
             Socio socio = servicioClub.buscarSocio(emailSocio).orElseThrow(SocioNoExiste::new);
             Temporada temporada = servicioClub.buscarTemporada(anio).orElseThrow(() -> new TemporadaNoEncontrada(""));
-            Actividad actividad = servicioClub.buscarActividad(idact).orElseThrow(() -> new ActividadNoEncontrada(""));
+            Actividad actividad = servicioClub.buscarActividadSinSolicitudes(idact).orElseThrow(() -> new ActividadNoEncontrada(""));
 
-            Solicitud solicitud = servicioClub.revisarSolicitudes(EJEMPLO_SOCIO, idact)
-                                    .stream()
-                                    .filter(s -> s.getSocioId().equals(emailSocio))
-                                    .findAny()
+            Solicitud solicitud = servicioClub.buscarSolicitudSocio(EJEMPLO_SOCIO, idact, emailSocio)
                                     .orElseThrow(SolicitudNoExiste::new);
 
             servicioClub.borrarSolicitud(socio, solicitud, idact);
@@ -223,39 +457,68 @@ public class ControladorClub {
 //    }
 
     //Obtener solicitudes de un socio determinado a una actividad (socio y admin), que puede ser o 1 o 0
-    //Si es la direccion, devuelve todas las solicitudes de la actividad
+    //Si es la direccion, devuelve las solicitudes de la actividad en orden de llegada, paginadas por (fecha, id)
     @GetMapping("/temporadas/{anio}/actividades/{idact}/solicitudes")
     public ResponseEntity<List<DTOSolicitud>> obtenerSolicitudesActividad(@PathVariable int anio, @PathVariable Long idact,
                                                                           @RequestParam(required = false) String emailSocio,
-                                                                          Principal usuarioAutenticado) {
+                                                                          @RequestParam(required = false) String cursor,
+                                                                          @RequestParam(required = false) Integer limite,
+                                                                          Authentication usuarioAutenticado) {
         List<Solicitud> solicitudes;
+        int tamPagina = CursorPaginacion.tamPagina(limite);
+        String siguienteCursor = null;
 
         try {
             Temporada temporada = servicioClub.buscarTemporada(anio).orElseThrow(() -> new TemporadaNoEncontrada(""));
-            Actividad actividad = servicioClub.buscarActividad(idact).orElseThrow(() -> new ActividadNoEncontrada(""));
-
-            var esAdmin = autenticacion.loadUserByUsername(usuarioAutenticado.getName())
-                    .getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN"));
-
-            if (esAdmin) {
-                solicitudes = servicioClub.revisarSolicitudes(EJEMPLO_SOCIO, idact)
-                                          .stream()
-                                          .toList();
+            Actividad actividad = servicioClub.buscarActividadSinSolicitudes(idact).orElseThrow(() -> new ActividadNoEncontrada(""));
+
+            if (esAdmin(usuarioAutenticado)) {
+                LocalDateTime despuesDeFecha = null;
+                Long despuesDeId = null;
+                if (cursor != null) {
+                    String[] claves = CursorPaginacion.decodificar(cursor, 2);
+                    despuesDeFecha = LocalDateTime.parse(claves[0]);
+                    despuesDeId = Long.valueOf(claves[1]);
+                }
+
+                // Se pide un elemento de más para saber si hay página siguiente
+                solicitudes = servicioClub.revisarSolicitudes(EJEMPLO_SOCIO, idact, despuesDeFecha, despuesDeId, tamPagina + 1);
+                if (solicitudes.size() > tamPagina) {
+                    solicitudes = solicitudes.subList(0, tamPagina);
+                    Solicitud ultima = solicitudes.get(tamPagina - 1);
+                    siguienteCursor = CursorPaginacion.codificar(ultima.getFechaSolicitud(), ultima.getSolicitudId());
+                }
             } else {
                 //Aunque sólo se devuelva la solicitud del socio, es una operación que debe hacer la dirección,
-                //por eso revisa las solicitudes ésta, y entonces devuelve al socio una lista con 1 item o 0
-                solicitudes = servicioClub.revisarSolicitudes(EJEMPLO_SOCIO, idact)
-                                           .stream()
-                                           .filter(s-> s.getSocioId().equals(emailSocio))
-                                           .toList();
+                //por eso la busca ésta, y entonces devuelve al socio una lista con 1 item o 0
+                solicitudes = servicioClub.buscarSolicitudSocio(EJEMPLO_SOCIO, idact, emailSocio)
+                                          .stream()
+                                          .toList();
             }
 
         } catch (TemporadaNoEncontrada | ActividadNoEncontrada e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
 
-        return ResponseEntity.ok(solicitudes.stream()
-                                            .map(s -> mapeador.dto(s))
-                                            .toList());
+        var respuesta = ResponseEntity.ok();
+        if (siguienteCursor != null)
+            respuesta.header(CursorPaginacion.CABECERA, siguienteCursor);
+
+        return respuesta.body(solicitudes.stream()
+                                         .map(s -> mapeador.dto(s))
+                                         .toList());
+    }
+
+    //Aciertos y fallos de la caché de segundo nivel por región (admin)
+    @GetMapping("/estadisticas/cache")
+    public ResponseEntity<List<DTOEstadisticasCache>> estadisticasCache() {
+        return ResponseEntity.ok(servicioEstadisticas.estadisticasCache());
+    }
+
+    @GetMapping("/estadisticas/fuentes-datos")
+    public ResponseEntity<List<DTOEstadisticasFuenteDatos>> estadisticasFuentesDatos() {
+        return ResponseEntity.ok(servicioEstadisticas.estadisticasFuentesDatos());
     }
 }
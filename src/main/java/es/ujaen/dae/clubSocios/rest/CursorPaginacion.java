@@ -0,0 +1,48 @@
+package es.ujaen.dae.clubSocios.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursores opacos para la paginación por clave (keyset) de los listados.
+ * La respuesta lleva el cursor de la página siguiente en la cabecera {@value #CABECERA} (sólo si hay más elementos)
+ * y el cliente lo devuelve tal cual en el parámetro "cursor" para pedir esa página.
+ */
+final class CursorPaginacion {
+    static final String CABECERA = "X-Siguiente-Cursor";
+    static final int LIMITE_POR_DEFECTO = 50;
+    static final int LIMITE_MAXIMO = 200;
+
+    private static final String SEPARADOR = "|";
+
+    private CursorPaginacion() {
+    }
+
+    static String codificar(Object... claves) {
+        StringBuilder sb = new StringBuilder();
+        for (Object clave : claves) {
+            if (!sb.isEmpty())
+                sb.append(SEPARADOR);
+            sb.append(clave);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException si el cursor no es válido o no tiene el número de claves esperado
+     */
+    static String[] decodificar(String cursor, int numClaves) {
+        String[] claves = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\" + SEPARADOR);
+        if (claves.length != numClaves)
+            throw new IllegalArgumentException("Cursor no válido");
+        return claves;
+    }
+
+    /**
+     * Tamaño de la página pedida: el límite indicado, hasta {@value #LIMITE_MAXIMO}, o {@value #LIMITE_POR_DEFECTO}
+     * si no se indica. Los listados siempre se paginan; si hay más elementos, la cabecera {@value #CABECERA} lo dice.
+     */
+    static int tamPagina(Integer limite) {
+        return Math.max(1, Math.min(limite == null ? LIMITE_POR_DEFECTO : limite, LIMITE_MAXIMO));
+    }
+}
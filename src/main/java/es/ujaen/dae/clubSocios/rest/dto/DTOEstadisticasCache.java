@@ -0,0 +1,9 @@
+package es.ujaen.dae.clubSocios.rest.dto;
+
+public record DTOEstadisticasCache(
+        String region,
+        long aciertos,
+        long fallos,
+        long inserciones,
+        long elementosEnMemoria) {
+}
@@ -0,0 +1,13 @@
+package es.ujaen.dae.clubSocios.rest.dto;
+
+/**
+ * Uso de una fuente de datos: conexiones entregadas y, para las réplicas, si reciben lecturas y su retraso.
+ * En la primaria, lecturasDesviadas cuenta las lecturas que le llegaron por no haber réplicas disponibles.
+ */
+public record DTOEstadisticasFuenteDatos(
+        String nombre,
+        long conexiones,
+        long lecturasDesviadas,
+        boolean disponible,
+        Long retrasoSegundos) {
+}
@@ -1,9 +1,11 @@
 package es.ujaen.dae.clubSocios.rest.dto;
+import com.fasterxml.jackson.annotation.JsonFormat;
 import es.ujaen.dae.clubSocios.enums.EstadoSolicitud;
 import java.time.LocalDateTime;
 
+// El id (64 bits, ver GeneradorIds) se envía como texto: como número JSON perdería precisión en JavaScript
 public record DTOSolicitud(
-        String id,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Long id,
         int numAcom,
         EstadoSolicitud estado,
         LocalDateTime fechaSoli,
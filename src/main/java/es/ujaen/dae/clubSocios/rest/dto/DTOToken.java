@@ -0,0 +1,9 @@
+package es.ujaen.dae.clubSocios.rest.dto;
+
+import java.time.Instant;
+
+public record DTOToken(
+        String token,
+        String tipo,
+        Instant caducidad) {
+}
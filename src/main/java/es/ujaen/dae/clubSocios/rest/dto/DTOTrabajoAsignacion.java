@@ -0,0 +1,18 @@
+package es.ujaen.dae.clubSocios.rest.dto;
+
+import java.util.List;
+
+public record DTOTrabajoAsignacion(
+        String id,
+        int anio,
+        boolean terminado,
+        int actividades,
+        int completadas,
+        int sinPlazas,
+        int yaAsignadas,
+        int fallidas,
+        int plazasAsignadas,
+        long milisegundos,
+        double actividadesPorSegundo,
+        List<String> errores) {
+}
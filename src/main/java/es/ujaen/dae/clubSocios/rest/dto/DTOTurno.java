@@ -0,0 +1,13 @@
+package es.ujaen.dae.clubSocios.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import es.ujaen.dae.clubSocios.enums.EstadoTurno;
+
+public record DTOTurno(
+        String id,
+        Long actividadId,
+        long posicion,
+        EstadoTurno estado,
+        String motivo,
+        @JsonFormat(shape = JsonFormat.Shape.STRING) Long solicitudId) {
+}
@@ -5,12 +5,14 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.security.web.access.expression.WebExpressionAuthorizationManager;
 
 @Configuration
@@ -20,28 +22,58 @@ public class Autorizacion {
         return authConf.getAuthenticationManager();
     }
 
+    /**
+     * Autenticación HTTP Basic contra {@link Autenticacion} con los usuarios en {@link CacheUsuarios}:
+     * la base de datos sólo se consulta la primera vez o tras modificar el socio.
+     */
     @Bean
-    public SecurityFilterChain autorizaciones(HttpSecurity httpSecurity) throws Exception {
+    public DaoAuthenticationProvider proveedorAutenticacion(Autenticacion autenticacion, PasswordEncoder passwordEncoder,
+                                                            CacheUsuarios cacheUsuarios) {
+        DaoAuthenticationProvider proveedor = new DaoAuthenticationProvider(passwordEncoder);
+        proveedor.setUserDetailsService(autenticacion);
+        proveedor.setUserCache(cacheUsuarios);
+        return proveedor;
+    }
+
+    @Bean
+    public SecurityFilterChain autorizaciones(HttpSecurity httpSecurity, ServicioTokens servicioTokens) throws Exception {
         return httpSecurity.authorizeRequests(auth -> auth
+                // Cualquier socio identificado con HTTP Basic puede pedir un token para las siguientes peticiones
+                        .requestMatchers(HttpMethod.POST, "/clubsocios/autenticacion")
+                            .authenticated()
                 // Todos pueden crear su usuario y ver las actividades de una temporada en particular,
                 // además de buscar una temporada
                         .requestMatchers(HttpMethod.POST,"/clubsocios/socios")
                             .permitAll()
                         .requestMatchers(HttpMethod.GET, "/clubsocios/temporadas/{anio}/actividades")
                             .permitAll()
+                        .requestMatchers(HttpMethod.GET, "/clubsocios/temporadas/{anio}/actividades/busqueda")
+                            .permitAll()
                         .requestMatchers(HttpMethod.GET, "/clubsocios/temporadas/{anio}")
                             .permitAll()
                 //Los socios son los únicos que pueden solicitar participar en una actividad
                         .requestMatchers(HttpMethod.POST,"/clubsocios/temporadas/{anio}/actividades/{idact}/solicitudes")
                             .hasRole("USER")
+                        .requestMatchers(HttpMethod.POST,"/clubsocios/temporadas/{anio}/actividades/{idact}/sala-espera")
+                            .hasRole("USER")
+                        .requestMatchers(HttpMethod.GET,"/clubsocios/sala-espera/{idTurno}")
+                            .access("hasRole('ADMIN') or hasRole('USER')")
 
-                // Sólo el admin puede: crear temporadas y crear actividades
+                // Sólo el admin puede: crear temporadas, crear actividades y fijar su estrategia de bloqueo
                         .requestMatchers(HttpMethod.POST, "/clubsocios/temporadas")
                             .hasRole("ADMIN")
                         .requestMatchers(HttpMethod.POST, "/clubsocios/temporadas/{anio}/actividades")
                             .hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.PUT, "/clubsocios/temporadas/{anio}/actividades/{idact}/estrategia-bloqueo")
+                            .hasRole("ADMIN")
                         .requestMatchers(HttpMethod.PUT, "/clubsocios/socios/{email}")
                             .hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/clubsocios/estadisticas/**")
+                            .hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.POST, "/clubsocios/temporadas/{anio}/asignacion")
+                            .hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/clubsocios/asignaciones/{idTrabajo}")
+                            .hasRole("ADMIN")
                 // Cualquiera entre admin y user.
                 // borrar solicitud de un socio, modificar solicitud de un socio,
                 // obtener solicitudes de una actividad --> si es admin, todas, si es socio, sólo la suya
@@ -55,6 +87,8 @@ public class Autorizacion {
                 .csrf(csrf -> csrf.disable())
                 .sessionManagement(sM -> sM.disable())
                 .httpBasic(Customizer.withDefaults())
+                // Las peticiones con token se autentican antes de llegar a HTTP Basic (BCrypt y base de datos)
+                .addFilterBefore(new FiltroTokens(servicioTokens), BasicAuthenticationFilter.class)
                 .build();
     }
 }
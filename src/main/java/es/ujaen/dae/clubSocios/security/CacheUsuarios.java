@@ -0,0 +1,47 @@
+package es.ujaen.dae.clubSocios.security;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import static es.ujaen.dae.clubSocios.repositorios.RepositorioSocio.CACHE_USUARIOS;
+
+/**
+ * Caché de los UserDetails de {@link Autenticacion} para el DaoAuthenticationProvider, acotada en tamaño y
+ * con caducidad (caché {@value es.ujaen.dae.clubSocios.repositorios.RepositorioSocio#CACHE_USUARIOS} de
+ * application.conf). RepositorioSocio la vacía al modificar un socio; como todas las cachés de la aplicación
+ * (ver Main.cachesTransaccionales), la entrada se borra al confirmar la transacción, no antes.
+ * Guarda y devuelve copias: Spring Security borra la contraseña del usuario autenticado al terminar
+ * (eraseCredentials) y, con la misma instancia, la entrada de la caché dejaría de servir.
+ */
+@Component
+public class CacheUsuarios implements UserCache {
+    private final Cache cache;
+
+    public CacheUsuarios(CacheManager cacheManager) {
+        this.cache = cacheManager.getCache(CACHE_USUARIOS);
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String usuario) {
+        UserDetails guardado = cache.get(usuario, UserDetails.class);
+        return guardado == null ? null : copia(guardado);
+    }
+
+    @Override
+    public void putUserInCache(UserDetails usuario) {
+        cache.put(usuario.getUsername(), copia(usuario));
+    }
+
+    @Override
+    public void removeUserFromCache(String usuario) {
+        cache.evict(usuario);
+    }
+
+    private static UserDetails copia(UserDetails usuario) {
+        return User.withUserDetails(usuario).build();
+    }
+}
@@ -0,0 +1,55 @@
+package es.ujaen.dae.clubSocios.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Autentica las peticiones con cabecera "Authorization: Bearer token" (tokens de {@link ServicioTokens}),
+ * sin BCrypt ni base de datos. Las peticiones sin token siguen al resto de la cadena (HTTP Basic);
+ * con un token inválido o caducado se responde 401 directamente.
+ * No es un bean, para que Spring Boot no lo registre también como filtro del servidor: lo añade {@link Autorizacion}.
+ */
+public class FiltroTokens extends OncePerRequestFilter {
+    private static final String PREFIJO = "Bearer ";
+
+    private final ServicioTokens servicioTokens;
+
+    public FiltroTokens(ServicioTokens servicioTokens) {
+        this.servicioTokens = servicioTokens;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest peticion, HttpServletResponse respuesta, FilterChain cadena)
+            throws ServletException, IOException {
+        String cabecera = peticion.getHeader(HttpHeaders.AUTHORIZATION);
+        if (cabecera == null || !cabecera.regionMatches(true, 0, PREFIJO, 0, PREFIJO.length())) {
+            cadena.doFilter(peticion, respuesta);
+            return;
+        }
+
+        Optional<Authentication> autenticacion = servicioTokens.validar(cabecera.substring(PREFIJO.length()).trim());
+        if (autenticacion.isEmpty()) {
+            respuesta.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+            respuesta.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        var contexto = SecurityContextHolder.createEmptyContext();
+        contexto.setAuthentication(autenticacion.get());
+        SecurityContextHolder.setContext(contexto);
+        try {
+            cadena.doFilter(peticion, respuesta);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
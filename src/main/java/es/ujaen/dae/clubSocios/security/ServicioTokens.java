@@ -0,0 +1,128 @@
+package es.ujaen.dae.clubSocios.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Tokens de sesión firmados con HMAC-SHA256 y clave local, para no verificar la contraseña (BCrypt) ni ir a la base
+ * de datos en cada petición. El token lleva el email del socio, sus roles y la caducidad, en Base64 URL, seguidos
+ * de la firma: payload.firma.
+ * Los roles viajan en el token, así que un cambio de roles no se nota hasta que caduca: por eso la duración es corta
+ * (clubsocios.tokens.duracion).
+ * La clave se lee de clubsocios.tokens.clave (Base64, al menos 32 bytes) y es obligatoria: sin ella la aplicación
+ * no arranca. Sólo con clubsocios.tokens.clave-aleatoria (perfil de pruebas) se genera una al azar al arrancar,
+ * con la que los tokens dejan de valer al reiniciar y no sirven entre instancias.
+ */
+@Service
+public class ServicioTokens {
+    private static final Logger log = LoggerFactory.getLogger(ServicioTokens.class);
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final int LONGITUD_MINIMA_CLAVE = 32;
+
+    private static final Base64.Encoder CODIFICADOR = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODIFICADOR = Base64.getUrlDecoder();
+
+    private final SecretKeySpec clave;
+    private final Duration duracion;
+    private final Clock reloj;
+
+    public ServicioTokens(@Value("${clubsocios.tokens.clave:}") String clave,
+                          @Value("${clubsocios.tokens.duracion:15m}") Duration duracion,
+                          @Value("${clubsocios.tokens.clave-aleatoria:false}") boolean claveAleatoria,
+                          Clock reloj) {
+        byte[] bytesClave;
+        if (clave.isBlank()) {
+            if (!claveAleatoria)
+                throw new IllegalStateException("Falta la clave de los tokens (clubsocios.tokens.clave o CLUBSOCIOS_TOKENS_CLAVE)");
+            log.warn("No se ha configurado clubsocios.tokens.clave: se usa una clave aleatoria y los tokens no sobreviven a un reinicio");
+            bytesClave = new byte[LONGITUD_MINIMA_CLAVE];
+            new SecureRandom().nextBytes(bytesClave);
+        } else {
+            bytesClave = Base64.getDecoder().decode(clave);
+            if (bytesClave.length < LONGITUD_MINIMA_CLAVE)
+                throw new IllegalArgumentException("La clave de los tokens debe tener al menos " + LONGITUD_MINIMA_CLAVE + " bytes");
+        }
+        this.clave = new SecretKeySpec(bytesClave, ALGORITMO);
+        this.duracion = duracion;
+        this.reloj = reloj;
+    }
+
+    /**
+     * Token emitido para un usuario, con el instante en que caduca.
+     */
+    public record Token(String valor, Instant caducidad) {
+    }
+
+    /**
+     * Emite un token para el usuario con los roles indicados, válido durante clubsocios.tokens.duracion.
+     */
+    public Token emitir(String usuario, Collection<? extends GrantedAuthority> roles) {
+        Instant caducidad = reloj.instant().plus(duracion);
+        String contenido = usuario + "\n"
+                + roles.stream().map(GrantedAuthority::getAuthority).collect(Collectors.joining(",")) + "\n"
+                + caducidad.getEpochSecond();
+        String payload = CODIFICADOR.encodeToString(contenido.getBytes(StandardCharsets.UTF_8));
+
+        return new Token(payload + "." + CODIFICADOR.encodeToString(firmar(payload)), caducidad);
+    }
+
+    /**
+     * Comprueba la firma y la caducidad del token.
+     *
+     * @return la autenticación del usuario del token, o vacío si el token no es válido o ha caducado
+     */
+    public Optional<Authentication> validar(String token) {
+        int punto = token.indexOf('.');
+        if (punto < 0)
+            return Optional.empty();
+
+        String payload = token.substring(0, punto);
+        try {
+            byte[] firma = DECODIFICADOR.decode(token.substring(punto + 1));
+            // Comparación en tiempo constante, para no dar pistas sobre la firma
+            if (!MessageDigest.isEqual(firma, firmar(payload)))
+                return Optional.empty();
+
+            String[] campos = new String(DECODIFICADOR.decode(payload), StandardCharsets.UTF_8).split("\n", -1);
+            if (campos.length != 3 || !reloj.instant().isBefore(Instant.ofEpochSecond(Long.parseLong(campos[2]))))
+                return Optional.empty();
+
+            var roles = AuthorityUtils.commaSeparatedStringToAuthorityList(campos[1]);
+            return Optional.of(new PreAuthenticatedAuthenticationToken(campos[0], null, roles));
+        } catch (IllegalArgumentException e) {
+            // Base64 o caducidad mal formados
+            return Optional.empty();
+        }
+    }
+
+    private byte[] firmar(String payload) {
+        try {
+            // Mac no es seguro entre hilos: uno por firma (crearlo es barato frente a BCrypt)
+            Mac mac = Mac.getInstance(ALGORITMO);
+            mac.init(clave);
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contador en memoria de las plazas libres de cada actividad, para rechazar las inscripciones en actividades
+ * agotadas sin ir a la base de datos.
+ * Es sólo una primera criba: la plaza la reserva siempre la base de datos (RepositorioActividad.reservarPlaza),
+ * así que el contador puede quedarse por encima de las plazas reales, pero nunca por debajo
+ * (las plazas de una actividad sólo disminuyen).
+ */
+@Component
+public class AforoActividades {
+    private final ConcurrentHashMap<Long, AtomicInteger> plazas = new ConcurrentHashMap<>();
+
+    /**
+     * Indica si se sabe que la actividad no tiene plazas. Si aún no hay contador para ella, devuelve false.
+     */
+    public boolean agotada(Long actividadId) {
+        AtomicInteger libres = plazas.get(actividadId);
+        return libres != null && libres.get() <= 0;
+    }
+
+    /**
+     * Toma una plaza del contador para la transacción en curso; si la transacción no llega a confirmarse, la devuelve.
+     * La primera vez el contador se inicia con las plazas disponibles de la actividad.
+     *
+     * @return false si el contador dice que no quedan plazas
+     */
+    public boolean tomarPlaza(Long actividadId, int plazasDisponibles) {
+        AtomicInteger libres = plazas.computeIfAbsent(actividadId, id -> new AtomicInteger(plazasDisponibles));
+        if (libres.getAndUpdate(n -> n > 0 ? n - 1 : n) <= 0)
+            return false;
+
+        alTerminar(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int estado) {
+                if (estado != STATUS_COMMITTED)
+                    libres.incrementAndGet();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Ajusta el contador a las plazas que quedan en base de datos cuando se confirme la transacción en curso.
+     * Sólo lo baja: si hay otras reservas en curso, su plaza ya está descontada.
+     */
+    public void ajustar(Long actividadId, int plazasDisponibles) {
+        alTerminar(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int estado) {
+                AtomicInteger libres = plazas.get(actividadId);
+                if (libres != null && estado == STATUS_COMMITTED)
+                    libres.accumulateAndGet(plazasDisponibles, Math::min);
+            }
+        });
+    }
+
+    /**
+     * La base de datos no ha podido reservar plaza: la actividad está agotada, termine como termine la transacción.
+     */
+    public void agotar(Long actividadId) {
+        alTerminar(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int estado) {
+                plazas.computeIfAbsent(actividadId, id -> new AtomicInteger()).set(0);
+            }
+        });
+    }
+
+    private static void alTerminar(TransactionSynchronization sincronizacion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(sincronizacion);
+        else
+            sincronizacion.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+    }
+}
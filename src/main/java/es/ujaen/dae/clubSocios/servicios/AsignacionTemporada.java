@@ -0,0 +1,251 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.excepciones.TemporadaNoEncontrada;
+import es.ujaen.dae.clubSocios.repositorios.RepositorioActividad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asignación de plazas de fin de inscripción de todas las actividades de una temporada cuyo plazo ya ha terminado
+ * y que aún no se han asignado. Las actividades se reparten entre un número fijo de hilos
+ * (clubsocios.asignacion-temporada.hilos), y cada una se asigna en su propia transacción con
+ * {@link ServicioClub#asignarPlazasFinInscripcion}: un fallo en una actividad no deshace las demás. Como en
+ * {@link PlanificadorVencimientos}, cada actividad se marca antes con {@link RepositorioActividad#marcarAsignacionRealizada},
+ * así que no se asigna dos veces aunque la asignen a la vez el planificador, otra instancia u otro trabajo. El trabajo se lanza en segundo plano y se consulta su progreso; los trabajos terminados
+ * se olvidan pasada una hora.
+ */
+@Service
+public class AsignacionTemporada implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(AsignacionTemporada.class);
+    // Errores que se guardan por trabajo, para no acumular miles si falla la base de datos
+    private static final int MAX_ERRORES = 100;
+    // Tiempo que se puede consultar un trabajo terminado
+    private static final Duration RETENCION_TRABAJOS = Duration.ofHours(1);
+
+    @Autowired
+    ServicioClub servicioClub;
+
+    @Autowired
+    RepositorioActividad repositorioActividad;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    Clock reloj;
+
+    private final ThreadPoolTaskExecutor hilos;
+    private final ConcurrentHashMap<String, Trabajo> trabajos = new ConcurrentHashMap<>();
+    // Trabajo más reciente de cada temporada, para no lanzar dos a la vez sobre la misma
+    private final ConcurrentHashMap<Integer, Trabajo> porTemporada = new ConcurrentHashMap<>();
+
+    /**
+     * El pool se construye con el builder de Spring Boot, así que sigue la configuración spring.task.execution
+     * (cola, espera al cerrar, decoradores) salvo el número de hilos, que es el de clubsocios.asignacion-temporada.hilos.
+     */
+    public AsignacionTemporada(ThreadPoolTaskExecutorBuilder builder,
+                               @Value("${clubsocios.asignacion-temporada.hilos:4}") int numHilos) {
+        this.hilos = builder.corePoolSize(numHilos)
+                .maxPoolSize(numHilos)
+                .threadNamePrefix("asignacion-temporada-")
+                .build();
+        this.hilos.initialize();
+    }
+
+    /**
+     * Progreso de la asignación de una temporada. Los contadores se actualizan a medida que terminan las actividades.
+     */
+    public static final class Trabajo {
+        private final String id = UUID.randomUUID().toString();
+        private final int anio;
+        private final Instant inicio = Instant.now();
+        private volatile Instant fin;
+        private volatile int actividades;
+        private final AtomicInteger completadas = new AtomicInteger();
+        private final AtomicInteger sinPlazas = new AtomicInteger();
+        private final AtomicInteger yaAsignadas = new AtomicInteger();
+        private final AtomicInteger fallidas = new AtomicInteger();
+        private final AtomicInteger plazasAsignadas = new AtomicInteger();
+        private final ConcurrentLinkedQueue<String> errores = new ConcurrentLinkedQueue<>();
+        private final CompletableFuture<Trabajo> finalizacion = new CompletableFuture<>();
+
+        private Trabajo(int anio) {
+            this.anio = anio;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getAnio() {
+            return anio;
+        }
+
+        public boolean terminado() {
+            return fin != null;
+        }
+
+        public int getActividades() {
+            return actividades;
+        }
+
+        /**
+         * Actividades a las que se han asignado plazas.
+         */
+        public int getCompletadas() {
+            return completadas.get();
+        }
+
+        /**
+         * Actividades que ya no tenían plazas libres.
+         */
+        public int getSinPlazas() {
+            return sinPlazas.get();
+        }
+
+        /**
+         * Actividades que asignó otro (el planificador de vencimientos, otra instancia) mientras tanto.
+         */
+        public int getYaAsignadas() {
+            return yaAsignadas.get();
+        }
+
+        public int getFallidas() {
+            return fallidas.get();
+        }
+
+        public int getPlazasAsignadas() {
+            return plazasAsignadas.get();
+        }
+
+        public List<String> getErrores() {
+            return new ArrayList<>(errores);
+        }
+
+        public Duration duracion() {
+            return Duration.between(inicio, fin != null ? fin : Instant.now());
+        }
+
+        /**
+         * Actividades procesadas por segundo desde el inicio.
+         */
+        public double actividadesPorSegundo() {
+            long ms = Math.max(1, duracion().toMillis());
+            return (completadas.get() + sinPlazas.get() + yaAsignadas.get() + fallidas.get()) * 1000.0 / ms;
+        }
+
+        /**
+         * Se completa cuando se han procesado todas las actividades.
+         */
+        public CompletableFuture<Trabajo> finalizacion() {
+            return finalizacion;
+        }
+
+        private void terminar() {
+            fin = Instant.now();
+            finalizacion.complete(this);
+        }
+    }
+
+    /**
+     * Lanza la asignación de las actividades de la temporada con el plazo de inscripción terminado y sin asignar.
+     * Si ya hay un trabajo en curso para la temporada, devuelve ese.
+     *
+     * @throws TemporadaNoEncontrada si no existe la temporada
+     */
+    public Trabajo lanzar(Socio dir, int anio) {
+        servicioClub.comprobarDireccion(dir);
+        var temporada = servicioClub.buscarTemporada(anio)
+                .orElseThrow(() -> new TemporadaNoEncontrada("Temporada " + anio + " no encontrada"));
+
+        olvidarTerminados(Instant.now().minus(RETENCION_TRABAJOS));
+
+        Trabajo nuevo = new Trabajo(anio);
+        Trabajo trabajo = porTemporada.compute(anio, (k, actual) -> actual != null && !actual.terminado() ? actual : nuevo);
+        if (trabajo != nuevo)
+            return trabajo;
+
+        List<Long> actividades;
+        try {
+            actividades = repositorioActividad.idsConInscripcionTerminada(temporada.getTemporadaId(), LocalDate.now(reloj));
+        } catch (RuntimeException e) {
+            // Sin la lista no hay trabajo: se libera la temporada para poder lanzarlo otra vez
+            porTemporada.remove(anio, trabajo);
+            throw e;
+        }
+        trabajos.put(trabajo.id, trabajo);
+        trabajo.actividades = actividades.size();
+        log.info("Asignación de plazas de la temporada {}: {} actividades", anio, actividades.size());
+
+        CompletableFuture<?>[] tareas = actividades.stream()
+                .map(id -> CompletableFuture.runAsync(() -> asignar(dir, trabajo, id), hilos))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(tareas).whenComplete((r, e) -> trabajo.terminar());
+        return trabajo;
+    }
+
+    public Optional<Trabajo> buscarTrabajo(String id) {
+        return Optional.ofNullable(trabajos.get(id));
+    }
+
+    /**
+     * Olvida los trabajos que terminaron antes del límite.
+     */
+    void olvidarTerminados(Instant limite) {
+        trabajos.values().removeIf(trabajo -> trabajo.terminado() && trabajo.fin.isBefore(limite));
+        porTemporada.values().removeIf(trabajo -> trabajo.terminado() && trabajo.fin.isBefore(limite));
+    }
+
+    private void asignar(Socio dir, Trabajo trabajo, Long actividadId) {
+        try {
+            transactionTemplate.executeWithoutResult(estado -> {
+                if (!repositorioActividad.marcarAsignacionRealizada(actividadId)) {
+                    trabajo.yaAsignadas.incrementAndGet();
+                    return;
+                }
+                // Sin plazas libres no hay nada que repartir, pero queda marcada como asignada
+                boolean hayPlaza = repositorioActividad.buscarPorIdSinSolicitudes(actividadId)
+                        .map(Actividad::hayPlaza)
+                        .orElse(false);
+                if (!hayPlaza) {
+                    trabajo.sinPlazas.incrementAndGet();
+                    return;
+                }
+                var resultado = servicioClub.asignarPlazasFinInscripcion(dir, actividadId, true);
+                trabajo.plazasAsignadas.addAndGet(resultado.plazasAsignadas());
+                trabajo.completadas.incrementAndGet();
+            });
+        } catch (RuntimeException e) {
+            log.warn("No se han podido asignar las plazas de la actividad {}", actividadId, e);
+            if (trabajo.fallidas.incrementAndGet() <= MAX_ERRORES)
+                trabajo.errores.add("Actividad " + actividadId + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        hilos.shutdown();
+    }
+}
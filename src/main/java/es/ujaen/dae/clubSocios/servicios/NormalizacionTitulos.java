@@ -0,0 +1,48 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.repositorios.RepositorioActividad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Rellena al arrancar el título normalizado de las actividades creadas antes de existir la columna
+ * titulo_normalizado, para que la búsqueda y la detección de títulos duplicados las tengan en cuenta.
+ * La normalización (tildes incluidas) sólo se hace en Java, por eso no va en un script SQL.
+ * Si dos actividades antiguas de la misma temporada resultan tener el mismo título normalizado, la segunda
+ * se deja sin él (la restricción única no admitiría ambas) y se avisa en el registro para corregirla a mano.
+ */
+@Service
+public class NormalizacionTitulos {
+    private static final Logger log = LoggerFactory.getLogger(NormalizacionTitulos.class);
+
+    @Autowired
+    RepositorioActividad repositorioActividad;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public int completarTitulosNormalizados() {
+        int completadas = 0;
+        for (Actividad actividad : repositorioActividad.sinTituloNormalizado()) {
+            Long temporadaId = actividad.getTemporada() != null ? actividad.getTemporada().getTemporadaId() : null;
+            // La consulta vacía antes los cambios pendientes, así que también ve los títulos completados en esta pasada
+            if (temporadaId != null && repositorioActividad.existeTitulo(temporadaId, actividad.getTitulo())) {
+                log.warn("Actividad {}: el título \"{}\" coincide con otro de la temporada {}, se deja sin normalizar",
+                        actividad.getId(), actividad.getTitulo(), temporadaId);
+                continue;
+            }
+
+            actividad.completarTituloNormalizado();
+            completadas++;
+        }
+
+        if (completadas > 0)
+            log.info("Título normalizado completado en {} actividades", completadas);
+        return completadas;
+    }
+}
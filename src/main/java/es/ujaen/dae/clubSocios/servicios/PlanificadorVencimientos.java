@@ -0,0 +1,162 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.enums.EstadoActividad;
+import es.ujaen.dae.clubSocios.eventos.CambioEstadoActividad;
+import es.ujaen.dae.clubSocios.repositorios.PlazoInscripcion;
+import es.ujaen.dae.clubSocios.repositorios.RepositorioActividad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import static es.ujaen.dae.clubSocios.util.UtilList.EJEMPLO_SOCIO;
+
+/**
+ * Vencimientos de los plazos de inscripción de las actividades: al empezar el plazo publica el paso a ABIERTA y,
+ * al día siguiente del fin del plazo, hace la asignación automática de plazas y publica el paso a
+ * PLAZO_INSCRIPCION_FINALIZADO (eventos {@link CambioEstadoActividad}).
+ * Los vencimientos de las actividades sin asignar se cargan en una cola de retardo ordenada por instante al arrancar
+ * y cada clubsocios.vencimientos.recarga milisegundos (actividades nuevas o de otras instancias); una tarea periódica
+ * saca los vencidos. La asignación, y con ella el evento PLAZO_INSCRIPCION_FINALIZADO, se hace una sola vez por
+ * actividad aunque haya varias instancias: la marca Actividad.asignacionRealizada se pone con un UPDATE condicionado
+ * en la misma transacción que la asignación. La apertura no tiene marca: cada instancia publica su propio evento
+ * ABIERTA, así que con varias instancias llega una vez por instancia y quien lo escuche debe admitir repetidos.
+ * Cuándo vence cada plazo lo decide el {@link Clock} de la aplicación, el mismo con el que ServicioClub comprueba
+ * los plazos de la actividad, así que las pruebas pueden adelantarlo.
+ */
+@Service
+public class PlanificadorVencimientos {
+    private static final Logger log = LoggerFactory.getLogger(PlanificadorVencimientos.class);
+
+    @Autowired
+    ServicioClub servicioClub;
+
+    @Autowired
+    RepositorioActividad repositorioActividad;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    ApplicationEventPublisher eventos;
+
+    private final Clock reloj;
+    private final DelayQueue<Vencimiento> cola = new DelayQueue<>();
+    // Vencimientos en la cola, para no programar dos veces el mismo al recargar
+    private final Set<String> programados = ConcurrentHashMap.newKeySet();
+
+    public PlanificadorVencimientos(Clock reloj) {
+        this.reloj = reloj;
+    }
+
+    private enum Tipo {
+        APERTURA,
+        FIN_INSCRIPCION
+    }
+
+    private final class Vencimiento implements Delayed {
+        final Long actividadId;
+        final Tipo tipo;
+        final Instant instante;
+
+        Vencimiento(Long actividadId, Tipo tipo, Instant instante) {
+            this.actividadId = actividadId;
+            this.tipo = tipo;
+            this.instante = instante;
+        }
+
+        String clave() {
+            return tipo + ":" + actividadId;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unidad) {
+            return unidad.convert(Duration.between(reloj.instant(), instante));
+        }
+
+        @Override
+        public int compareTo(Delayed otro) {
+            return instante.compareTo(((Vencimiento) otro).instante);
+        }
+    }
+
+    /**
+     * Programa los vencimientos de las actividades pendientes de celebrar que aún no tienen hecha la asignación
+     * de fin de inscripción. Los ya vencidos (por ejemplo, mientras la aplicación estaba parada) saltan en la siguiente
+     * comprobación; en una base de datos anterior a la marca, migracion-asignacion-realizada.sql da por asignadas
+     * las actividades con el plazo terminado.
+     */
+    @Scheduled(fixedDelayString = "${clubsocios.vencimientos.recarga:600000}")
+    public void recargar() {
+        LocalDate hoy = LocalDate.now(reloj);
+        for (PlazoInscripcion plazo : repositorioActividad.pendientesDeAsignacion(hoy)) {
+            if (hoy.isBefore(plazo.fechaInicioInscripcion()))
+                programar(plazo.actividadId(), Tipo.APERTURA, plazo.fechaInicioInscripcion());
+            // El último día del plazo aún se admiten inscripciones: se asigna al empezar el día siguiente
+            programar(plazo.actividadId(), Tipo.FIN_INSCRIPCION, plazo.fechaFinInscripcion().plusDays(1));
+        }
+    }
+
+    /**
+     * Dispara los vencimientos cuyo instante ya ha llegado. Si falla la asignación de una actividad,
+     * queda sin marcar y se reprograma en la siguiente recarga.
+     */
+    @Scheduled(fixedDelayString = "${clubsocios.vencimientos.intervalo:60000}",
+               initialDelayString = "${clubsocios.vencimientos.intervalo:60000}")
+    public void comprobarVencimientos() {
+        Vencimiento vencimiento;
+        while ((vencimiento = cola.poll()) != null) {
+            programados.remove(vencimiento.clave());
+            try {
+                if (vencimiento.tipo == Tipo.APERTURA)
+                    publicar(vencimiento.actividadId, EstadoActividad.CERRADA, EstadoActividad.ABIERTA);
+                else
+                    finalizarInscripcion(vencimiento.actividadId);
+            } catch (RuntimeException e) {
+                log.warn("No se ha podido procesar el vencimiento {} de la actividad {}", vencimiento.tipo, vencimiento.actividadId, e);
+            }
+        }
+    }
+
+    private void programar(Long actividadId, Tipo tipo, LocalDate dia) {
+        Vencimiento vencimiento = new Vencimiento(actividadId, tipo, dia.atStartOfDay(reloj.getZone()).toInstant());
+        if (programados.add(vencimiento.clave()))
+            cola.add(vencimiento);
+    }
+
+    private void finalizarInscripcion(Long actividadId) {
+        Boolean marcada = transactionTemplate.execute(estado -> {
+            // Otra instancia, o la dirección a mano, puede haberla asignado ya
+            if (!repositorioActividad.marcarAsignacionRealizada(actividadId))
+                return false;
+
+            boolean hayPlaza = repositorioActividad.buscarPorIdSinSolicitudes(actividadId)
+                    .map(Actividad::hayPlaza)
+                    .orElse(false);
+            if (hayPlaza)
+                servicioClub.asignarPlazasFinInscripcion(EJEMPLO_SOCIO, actividadId, true);
+            return true;
+        });
+
+        if (Boolean.TRUE.equals(marcada))
+            publicar(actividadId, EstadoActividad.ABIERTA, EstadoActividad.PLAZO_INSCRIPCION_FINALIZADO);
+    }
+
+    private void publicar(Long actividadId, EstadoActividad anterior, EstadoActividad nuevo) {
+        eventos.publishEvent(new CambioEstadoActividad(actividadId, anterior, nuevo, reloj.instant()));
+    }
+}
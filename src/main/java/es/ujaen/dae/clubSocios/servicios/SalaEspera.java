@@ -0,0 +1,275 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.enums.EstadoTurno;
+import es.ujaen.dae.clubSocios.excepciones.NoHayPlazas;
+import es.ujaen.dae.clubSocios.excepciones.SalaEsperaLlena;
+import es.ujaen.dae.clubSocios.excepciones.SolicitudYaRealizada;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static es.ujaen.dae.clubSocios.util.UtilList.EJEMPLO_SOCIO;
+
+/**
+ * Sala de espera para las inscripciones en actividades con mucha demanda al abrirse el plazo.
+ * Cada actividad tiene una cola FIFO acotada: las solicitudes reciben un turno numerado por orden de llegada
+ * y una tarea periódica las atiende en ese orden, como mucho "lote" por actividad en cada pasada,
+ * con la reserva de plaza de {@link ServicioClub#registrarSolicitudConReserva}.
+ * El cliente consulta su turno para conocer su posición y el resultado.
+ */
+@Service
+public class SalaEspera {
+    private static final Logger log = LoggerFactory.getLogger(SalaEspera.class);
+
+    @Autowired
+    ServicioClub servicioClub;
+
+    private final int capacidad;
+    private final int lote;
+    private final Duration retencion;
+
+    private final ConcurrentHashMap<Long, Cola> colas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Turno> turnos = new ConcurrentHashMap<>();
+    // Turnos ya resueltos, en el orden en que terminaron, para olvidarlos pasado el tiempo de retención
+    private final ConcurrentLinkedQueue<Turno> resueltos = new ConcurrentLinkedQueue<>();
+
+    public SalaEspera(@Value("${clubsocios.sala-espera.capacidad:10000}") int capacidad,
+                      @Value("${clubsocios.sala-espera.lote:50}") int lote,
+                      @Value("${clubsocios.sala-espera.retencion:10m}") Duration retencion) {
+        this.capacidad = capacidad;
+        this.lote = lote;
+        this.retencion = retencion;
+    }
+
+    /**
+     * Turno de un socio en la cola de una actividad. El número indica el orden de llegada dentro de la actividad.
+     */
+    public static final class Turno {
+        private final String id = UUID.randomUUID().toString();
+        private final Long actividadId;
+        private final long numero;
+        private final Socio socio;
+        private final int numAcompanantes;
+        private volatile EstadoTurno estado = EstadoTurno.EN_ESPERA;
+        private volatile String motivo;
+        private volatile Long solicitudId;
+        private volatile Instant resuelto;
+
+        private Turno(Long actividadId, long numero, Socio socio, int numAcompanantes) {
+            this.actividadId = actividadId;
+            this.numero = numero;
+            this.socio = socio;
+            this.numAcompanantes = numAcompanantes;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Long getActividadId() {
+            return actividadId;
+        }
+
+        public String getSocioId() {
+            return socio.getSocioId();
+        }
+
+        public long getNumero() {
+            return numero;
+        }
+
+        public EstadoTurno getEstado() {
+            return estado;
+        }
+
+        public String getMotivo() {
+            return motivo;
+        }
+
+        public Long getSolicitudId() {
+            return solicitudId;
+        }
+    }
+
+    /**
+     * Cola de una actividad. Numerar y encolar se hacen bajo el mismo cerrojo, para que el orden de la cola
+     * sea el de los números de turno. Cuando ya no le quedan turnos se retira del mapa de colas; una cola retirada
+     * no admite más turnos, y quien llegue a ella después crea una nueva.
+     */
+    private final class Cola {
+        final Long actividadId;
+        final ReentrantLock cerrojo = new ReentrantLock();
+        final Queue<Turno> espera = new ArrayDeque<>();
+        final Map<String, Turno> porSocio = new HashMap<>();
+        long ultimoNumero;
+        // Número del último turno sacado de la cola; la posición de un turno es numero - atendidos
+        volatile long atendidos;
+        boolean retirada;
+
+        Cola(Long actividadId) {
+            this.actividadId = actividadId;
+        }
+
+        /**
+         * @return el turno, o null si la cola ya se ha retirado
+         */
+        Turno encolar(Socio socio, int numAcompanantes) {
+            cerrojo.lock();
+            try {
+                if (retirada)
+                    return null;
+
+                // Un socio que vuelve a pedir turno recibe el que ya tenía
+                Turno existente = porSocio.get(socio.getSocioId());
+                if (existente != null)
+                    return existente;
+
+                if (espera.size() >= capacidad)
+                    throw new SalaEsperaLlena();
+
+                Turno turno = new Turno(actividadId, ++ultimoNumero, socio, numAcompanantes);
+                espera.add(turno);
+                porSocio.put(socio.getSocioId(), turno);
+                turnos.put(turno.id, turno);
+                return turno;
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        Turno siguiente() {
+            cerrojo.lock();
+            try {
+                Turno turno = espera.poll();
+                if (turno != null)
+                    atendidos = turno.numero;
+                return turno;
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        /**
+         * Olvida un turno resuelto.
+         *
+         * @return true si la cola se ha quedado sin turnos y se ha retirado
+         */
+        boolean olvidar(Turno turno) {
+            cerrojo.lock();
+            try {
+                porSocio.remove(turno.socio.getSocioId(), turno);
+                retirada = espera.isEmpty() && porSocio.isEmpty();
+                return retirada;
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+    }
+
+    /**
+     * Pone al socio en la cola de la actividad.
+     *
+     * @return el turno asignado, o el que ya tenía el socio en esa actividad
+     * @throws SalaEsperaLlena si la cola de la actividad está completa
+     */
+    public Turno pedirTurno(Long actividadId, Socio socio, int numAcompanantes) {
+        while (true) {
+            Cola cola = colas.computeIfAbsent(actividadId, Cola::new);
+            Turno turno = cola.encolar(socio, numAcompanantes);
+            if (turno != null)
+                return turno;
+            // La cola se acaba de retirar por vacía: la siguiente vuelta crea otra. Sólo se quita esa;
+            // otro hilo puede haber puesto ya la nueva, con turnos que no se pueden perder
+            colas.remove(actividadId, cola);
+        }
+    }
+
+    public Optional<Turno> buscarTurno(String id) {
+        return Optional.ofNullable(turnos.get(id));
+    }
+
+    /**
+     * Posición del turno en la cola de su actividad (1 es el siguiente en ser atendido), o 0 si ya se ha atendido.
+     */
+    public long posicion(Turno turno) {
+        if (turno.estado != EstadoTurno.EN_ESPERA)
+            return 0;
+        Cola cola = colas.get(turno.actividadId);
+        return cola == null ? 0 : Math.max(0, turno.numero - cola.atendidos);
+    }
+
+    /**
+     * Atiende hasta "lote" turnos de cada actividad, en orden de llegada. El ritmo de entrada a la base de datos
+     * queda fijado por el lote y el intervalo entre pasadas (clubsocios.sala-espera.intervalo, en milisegundos).
+     */
+    @Scheduled(fixedDelayString = "${clubsocios.sala-espera.intervalo:100}",
+               initialDelayString = "${clubsocios.sala-espera.intervalo:100}")
+    public void atender() {
+        for (Cola cola : colas.values()) {
+            for (int i = 0; i < lote; i++) {
+                Turno turno = cola.siguiente();
+                if (turno == null)
+                    break;
+                inscribir(turno);
+            }
+        }
+        olvidarResueltos(Instant.now().minus(retencion));
+    }
+
+    private void inscribir(Turno turno) {
+        try {
+            var solicitud = servicioClub.registrarSolicitudConReserva(EJEMPLO_SOCIO, turno.socio, turno.actividadId, turno.numAcompanantes);
+            turno.solicitudId = solicitud.getSolicitudId();
+            turno.estado = EstadoTurno.CONFIRMADO;
+        } catch (NoHayPlazas e) {
+            rechazar(turno, "No hay plazas disponibles en la actividad");
+        } catch (SolicitudYaRealizada e) {
+            rechazar(turno, "El socio ya tiene una solicitud en la actividad");
+        } catch (RuntimeException e) {
+            log.warn("No se ha podido inscribir el turno {} de la actividad {}", turno.numero, turno.actividadId, e);
+            rechazar(turno, "No se ha podido registrar la solicitud");
+        }
+        turno.resuelto = Instant.now();
+        resueltos.add(turno);
+    }
+
+    private static void rechazar(Turno turno, String motivo) {
+        turno.motivo = motivo;
+        turno.estado = EstadoTurno.RECHAZADO;
+    }
+
+    /**
+     * Olvida los turnos resueltos antes del límite y retira las colas que se quedan sin turnos,
+     * para que no se acumule una cola por cada actividad que ha tenido sala de espera.
+     */
+    void olvidarResueltos(Instant limite) {
+        Turno turno;
+        while ((turno = resueltos.peek()) != null && turno.resuelto.isBefore(limite)) {
+            resueltos.poll();
+            turnos.remove(turno.id);
+            Cola cola = colas.get(turno.actividadId);
+            if (cola != null && cola.olvidar(turno))
+                colas.remove(turno.actividadId, cola);
+        }
+    }
+
+    int numColas() {
+        return colas.size();
+    }
+}
@@ -1,30 +1,54 @@
 package es.ujaen.dae.clubSocios.servicios;
 
+import es.ujaen.dae.clubSocios.asignacion.EstrategiaAsignacion;
+import es.ujaen.dae.clubSocios.asignacion.ResultadoAsignacion;
 import es.ujaen.dae.clubSocios.entidades.Actividad;
 import es.ujaen.dae.clubSocios.entidades.Socio;
 import es.ujaen.dae.clubSocios.entidades.Solicitud;
 import es.ujaen.dae.clubSocios.entidades.Temporada;
+import es.ujaen.dae.clubSocios.enums.CriterioAsignacion;
 import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import es.ujaen.dae.clubSocios.enums.EstrategiaBloqueo;
 import es.ujaen.dae.clubSocios.excepciones.*;
 import es.ujaen.dae.clubSocios.repositorios.RepositorioActividad;
 import es.ujaen.dae.clubSocios.repositorios.RepositorioSocio;
 import es.ujaen.dae.clubSocios.repositorios.RepositorioTemporada;
+import es.ujaen.dae.clubSocios.rest.dto.DTOActividad;
+import es.ujaen.dae.clubSocios.util.CerrojosPorClave;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static es.ujaen.dae.clubSocios.util.UtilList.EJEMPLO_SOCIO;
 
 @Service
 @Validated
 public class ServicioClub {
+    private static final Logger log = LoggerFactory.getLogger(ServicioClub.class);
+
     @Autowired
     RepositorioSocio repositorioSocio;
 
@@ -34,6 +58,48 @@ public class ServicioClub {
     @Autowired
     RepositorioTemporada repositorioTemporada;
 
+    @Autowired
+    AforoActividades aforo;
+
+    // Fecha de las comprobaciones de plazo de las actividades; las pruebas lo sustituyen
+    @Autowired
+    Clock reloj;
+
+    // Cada intento de inscripción (registrarSolicitud, registrarSolicitudConReserva) va en una transacción nueva,
+    // aunque se llame desde dentro de otra: unido a la del llamante, un conflicto de versión o de bloqueo la dejaría
+    // marcada para deshacer y el reintento no serviría
+    private TransactionTemplate transaccionPorIntento;
+
+    // Estrategia de bloqueo de las inscripciones en las actividades que no tienen una propia
+    @Value("${clubsocios.bloqueo.estrategia:OPTIMISTA}")
+    EstrategiaBloqueo estrategiaBloqueo;
+
+    // Espera máxima por el bloqueo de la actividad con la estrategia PESIMISTA
+    @Value("${clubsocios.bloqueo.espera-maxima:2s}")
+    Duration esperaBloqueo;
+
+    // Reparto de las plazas libres al final del período de inscripción (asignarPlazasFinInscripcion)
+    @Value("${clubsocios.asignacion.criterio:TURNOS}")
+    CriterioAsignacion criterioAsignacion;
+
+    // Semilla del criterio SORTEO; con la misma semilla el sorteo da siempre el mismo resultado. Sin ella,
+    // cada asignación sortea con una semilla al azar, que queda en el registro para poder repetir el sorteo
+    @Value("${clubsocios.asignacion.semilla:#{null}}")
+    Long semillaSorteo;
+
+    // Serializa dentro de esta instancia las inscripciones de una misma actividad (ver registrarSolicitud)
+    private final CerrojosPorClave cerrojosActividades = new CerrojosPorClave(64);
+
+    private static final int MAX_INTENTOS_INSCRIPCION = 5;
+    private static final long ESPERA_BASE_MS = 10;
+    private static final long ESPERA_MAXIMA_MS = 500;
+
+    @Autowired
+    void setGestorTransacciones(PlatformTransactionManager gestorTransacciones) {
+        transaccionPorIntento = new TransactionTemplate(gestorTransacciones);
+        transaccionPorIntento.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
     public ServicioClub() {
 
     }
@@ -44,13 +110,24 @@ public class ServicioClub {
 
     ///Prefiero buscar temporada por año, en vez de por id
     public Optional<Temporada> buscarTemporada(int anio) {
-        return repositorioTemporada.buscarPorAnio(anio);
+        return repositorioTemporada.buscarIdPorAnio(anio).flatMap(repositorioTemporada::buscarPorId);
     }
 
     public Optional<Actividad> buscarActividad(Long id){
         return repositorioActividad.buscarPorId(id);
     }
 
+    public Optional<Actividad> buscarActividadSinSolicitudes(Long id){
+        return repositorioActividad.buscarPorIdSinSolicitudes(id);
+    }
+
+    /**
+     * Indica, sin consultar la base de datos, si ya se sabe que la actividad no tiene plazas libres.
+     */
+    public boolean actividadAgotada(Long actividadId) {
+        return aforo.agotada(actividadId);
+    }
+
     public Optional<Socio> buscarSocio(String email){
         if (EJEMPLO_SOCIO.getSocioId().equals(email))
             return Optional.of(EJEMPLO_SOCIO);
@@ -62,10 +139,28 @@ public class ServicioClub {
         return repositorioActividad.buscarPorNombre(nombre);
     }
 
+    public List<Actividad> buscarActividadPorNombre(Long temporadaId, String texto){
+        return repositorioActividad.buscarPorNombre(temporadaId, texto);
+    }
+
     public List<Actividad> obtenerActividadesTemporada(Long id) {
         return repositorioTemporada.obtenerActividadesDeTemporada(id);
     }
 
+    /**
+     * Listado de las actividades de una temporada proyectado directamente a DTO, sin cargar entidades.
+     */
+    public List<DTOActividad> listadoActividadesTemporada(Long id) {
+        return repositorioTemporada.obtenerDtoActividadesDeTemporada(id);
+    }
+
+    /**
+     * Página del listado de actividades de una temporada, a partir de la actividad con id despuesDe (excluida).
+     */
+    public List<DTOActividad> listadoActividadesTemporada(Long id, Long despuesDe, int limite) {
+        return repositorioTemporada.obtenerDtoActividadesDeTemporada(id, despuesDe, limite);
+    }
+
     public Temporada crearTemporada(Socio dir, @Valid Temporada temporada) {
         comprobarDireccion(dir);
 
@@ -87,12 +182,11 @@ public class ServicioClub {
 
         var temporada = repositorioTemporada.buscarPorId(temporadaId).orElseThrow(() -> new TemporadaNoEncontrada("Temporada " + temporadaId + " no encontrada"));
 
-        if(!repositorioActividad.buscarPorNombre(actividad.getTitulo()).isEmpty()){
+        if (repositorioActividad.existeTitulo(temporadaId, actividad.getTitulo())) {
             throw new ActividadYaRegistrada();
         }
 
         temporada.aniadirActividad(actividad);
-        actividad.setTemporada(temporada);
 
         repositorioActividad.guardarActividad(actividad);
         repositorioTemporada.actualizar(temporada);
@@ -100,6 +194,76 @@ public class ServicioClub {
         return actividad;
     }
 
+    /**
+     * Crea varias actividades de una temporada en una sola transacción.
+     * Como los ids salen de una secuencia con reserva por bloques, Hibernate agrupa las inserciones en lotes
+     * (hibernate.jdbc.batch_size) en vez de lanzar una sentencia por actividad.
+     *
+     * @param temporadaId id de la temporada a la que se añaden las actividades
+     * @param actividades actividades a crear
+     * @return las actividades creadas
+     */
+    @Transactional
+    public List<Actividad> crearActividades(Socio dir, Long temporadaId, List<@Valid Actividad> actividades) {
+        comprobarDireccion(dir);
+
+        var temporada = repositorioTemporada.buscarPorId(temporadaId).orElseThrow(() -> new TemporadaNoEncontrada("Temporada " + temporadaId + " no encontrada"));
+
+        // Las comprobaciones van antes de persistir: una consulta entre inserciones obligaría a vaciar el lote
+        Set<String> titulos = new HashSet<>();
+        for (Actividad actividad : actividades) {
+            if (!titulos.add(actividad.getTituloNormalizado()) || repositorioActividad.existeTitulo(temporadaId, actividad.getTitulo())) {
+                throw new ActividadYaRegistrada();
+            }
+        }
+
+        for (Actividad actividad : actividades) {
+            temporada.aniadirActividad(actividad);
+            repositorioActividad.guardarActividad(actividad);
+        }
+
+        repositorioTemporada.actualizar(temporada);
+        return actividades;
+    }
+
+    /**
+     * Importa de una vez las solicitudes de varios socios en una actividad, como si la dirección las registrara una a una:
+     * cada solicitud consume plazas en el orden dado. Si algún socio no existe, ya tiene solicitud o no quedan plazas,
+     * no se importa ninguna.
+     * Los socios se leen con una sola consulta y las solicitudes, cuyo id se genera en la aplicación,
+     * se insertan en lotes (hibernate.jdbc.batch_size) al confirmar la transacción.
+     *
+     * @param actividadId id de la actividad
+     * @param acompanantesPorSocio número de acompañantes de cada socio (email), en el orden en que se inscriben
+     * @return las solicitudes creadas
+     */
+    @Transactional
+    public List<Solicitud> importarSolicitudes(Socio dir, Long actividadId, Map<String, Integer> acompanantesPorSocio) {
+        comprobarDireccion(dir);
+
+        var actividad = repositorioActividad.buscarPorId(actividadId).orElseThrow(() -> new ActividadNoEncontrada("Actividad " + actividadId + " no encontrada"));
+        Map<String, Socio> socios = repositorioSocio.buscarPorIds(acompanantesPorSocio.keySet()).stream()
+                .collect(Collectors.toMap(Socio::getSocioId, Function.identity()));
+
+        // Todas las solicitudes se crean antes de persistir ninguna, para no partir los lotes de inserción
+        List<Solicitud> solicitudes = new ArrayList<>(acompanantesPorSocio.size());
+        for (var entrada : acompanantesPorSocio.entrySet()) {
+            Socio socio = socios.get(entrada.getKey());
+            if (socio == null)
+                throw new SocioNoExiste();
+
+            Solicitud solicitud = actividad.solicitarInscripcion(socio, entrada.getValue(), true, LocalDate.now(reloj));
+            actividad.agregarSolicitud(solicitud);
+            solicitudes.add(solicitud);
+        }
+
+        for (Solicitud solicitud : solicitudes)
+            repositorioActividad.guardarSolicitud(solicitud, actividad);
+
+        aforo.ajustar(actividadId, actividad.getPlazasDisponibles());
+        return solicitudes;
+    }
+
 //    /**
 //     * La dirección registra una nueva solicitud en una actividad.
 //     * Esta funcionalidad es suponiendo que alguien vaya presencialmente
@@ -152,6 +316,35 @@ public class ServicioClub {
         return actividad.revisarSolicitudes();
     }
 
+    /**
+     * Página de las solicitudes de una actividad en orden de llegada, para la dirección.
+     * A diferencia de {@link #revisarSolicitudes(Socio, Long)}, no carga ni ordena la colección completa.
+     *
+     * @param actividadId id de la actividad
+     * @param despuesDeFecha fecha de la última solicitud de la página anterior, o null para la primera página
+     * @param despuesDeId id de la última solicitud de la página anterior
+     * @param limite tamaño máximo de la página
+     */
+    public List<Solicitud> revisarSolicitudes(@Valid Socio dir, Long actividadId, LocalDateTime despuesDeFecha, Long despuesDeId, int limite) {
+        comprobarDireccion(dir);
+
+        return repositorioActividad.paginaSolicitudes(actividadId, despuesDeFecha, despuesDeId, limite);
+    }
+
+    /**
+     * Solicitud de un socio en una actividad, buscada directamente por (actividad, socio)
+     * sin cargar ni ordenar el resto de solicitudes de la actividad.
+     *
+     * @param actividadId id de la actividad
+     * @param socioId email del socio
+     * @return la solicitud del socio, o vacío si no ha hecho ninguna en la actividad
+     */
+    public Optional<Solicitud> buscarSolicitudSocio(@Valid Socio dir, Long actividadId, String socioId) {
+        comprobarDireccion(dir);
+
+        return repositorioActividad.buscarSolicitudSocio(actividadId, socioId);
+    }
+
     /*
     public List<Solicitud> obtenerSolicitudesSocioActividad(@Valid String idSocio, Long actividadId) {
         var actividad = repositorioActividad.buscarPorId(actividadId).orElseThrow(() -> new ActividadNoEncontrada("Actividad " + actividadId + " no encontrada"));
@@ -160,13 +353,23 @@ public class ServicioClub {
     }
     */
 
+    /**
+     * Inscribe al socio en la actividad ya cargada. La comprobación de solicitud repetida de la actividad se hace
+     * en memoria; si otra transacción ha inscrito al mismo socio a la vez, la restricción única salta al insertar
+     * y se traduce también a {@link SolicitudYaRealizada}.
+     */
     @Transactional
     public Solicitud procesarInscripcion(Socio socio, int numAcompanantes, boolean administrador, Actividad actividad){
 
-        Solicitud solicitud = actividad.solicitarInscripcion(socio, numAcompanantes, administrador);
+        Solicitud solicitud = actividad.solicitarInscripcion(socio, numAcompanantes, administrador, LocalDate.now(reloj));
         actividad.agregarSolicitud(solicitud);
-        repositorioActividad.guardarSolicitud(solicitud, actividad);
-        repositorioActividad.actualizar(actividad);
+        try {
+            repositorioActividad.insertarSolicitud(solicitud);
+        } catch (DataIntegrityViolationException e) {
+            throw solicitudDuplicada(e) ? new SolicitudYaRealizada() : e;
+        }
+        repositorioActividad.actualizarConSolicitudes(actividad);
+        aforo.ajustar(actividad.getId(), actividad.getPlazasDisponibles());
         return solicitud;
     }
 
@@ -184,29 +387,44 @@ public class ServicioClub {
         comprobarDireccion(dir);
         var actividad = repositorioActividad.buscarPorId(actividadId).orElseThrow(() -> new ActividadNoEncontrada("Actividad " + actividadId + " no encontrada"));
 
-        actividad.asignarPlazasFinal(solicitud);
+        actividad.asignarPlazasFinal(solicitud, LocalDate.now(reloj));
         repositorioActividad.actualizar(actividad);
+        aforo.ajustar(actividadId, actividad.getPlazasDisponibles());
     }
 
+    /**
+     * Asignación automática de las plazas libres de la actividad con el criterio configurado (clubsocios.asignacion.criterio).
+     * El reparto se calcula en memoria en una sola pasada y se guarda al confirmar la transacción:
+     * las solicitudes modificadas se actualizan en lotes JDBC (hibernate.jdbc.batch_size).
+     *
+     * @return las plazas concedidas a cada solicitud
+     */
     @Transactional
-    public void asignarPlazasFinInscripcion(@Valid Socio dir, Long actividadId, boolean administrador) {
+    public ResultadoAsignacion asignarPlazasFinInscripcion(@Valid Socio dir, Long actividadId, boolean administrador) {
         comprobarDireccion(dir);
         var actividad = repositorioActividad.buscarPorId(actividadId).orElseThrow(() -> new ActividadNoEncontrada("Actividad " + actividadId + " no encontrada"));
 
-        actividad.asignarPlazasFinInscripcion(administrador);
+        long semilla = semillaSorteo != null ? semillaSorteo : ThreadLocalRandom.current().nextLong();
+        if (criterioAsignacion == CriterioAsignacion.SORTEO)
+            log.info("Sorteo de plazas de la actividad {} con la semilla {}", actividadId, semilla);
+
+        var resultado = actividad.asignarPlazasFinInscripcion(administrador,
+                EstrategiaAsignacion.de(criterioAsignacion, semilla), LocalDate.now(reloj));
         repositorioActividad.actualizar(actividad);
+        aforo.ajustar(actividadId, actividad.getPlazasDisponibles());
+        return resultado;
     }
 
+    /**
+     * Reinicia a PENDIENTE la cuota de todos los socios (inicio de temporada) con un único UPDATE en base de datos.
+     *
+     * @return número de socios cuyo estado de cuota ha cambiado
+     */
     @Transactional
-    public void resetearEstadoCuota(Socio dir) {
+    public int resetearEstadoCuota(Socio dir) {
         comprobarDireccion(dir);
 
-        repositorioSocio.listadoIds().stream()
-                .map(id -> repositorioSocio.buscarPorId(id).orElseThrow(SocioNoExiste::new))
-                .forEach(socio -> {
-                    socio.setEstadoCuota(EstadoCuota.PENDIENTE);
-                    repositorioSocio.actualizar(socio);
-                });
+        return repositorioSocio.actualizarEstadoCuotaTodos(EstadoCuota.PENDIENTE);
     }
 
 
@@ -216,34 +434,162 @@ public class ServicioClub {
         }
     }
 
-    @Transactional
+    /**
+     * Registra la solicitud de un socio cargando la actividad y actualizándola con la estrategia de bloqueo
+     * de la actividad, o la general si no tiene una propia (ver {@link EstrategiaBloqueo}).
+     * Con la optimista, las inscripciones a una misma actividad se hacen de una en una dentro de esta instancia
+     * (cerrojo por actividad), así que sólo chocan con las de otros nodos. Con la pesimista espera la base de datos,
+     * y con la de saltar bloqueadas no espera nadie. Cada intento va en su propia transacción y, si hay conflicto
+     * (versión cambiada, espera agotada o actividad bloqueada), se reintenta tras una espera exponencial
+     * con fluctuación aleatoria. Las inscripciones a actividades distintas no se esperan entre sí.
+     *
+     * @param socio       socio que hace la solicitud.
+     * @param actividadId identificador de la actividad.
+     * @param numAcom     número de acompañantes del socio.
+     */
     public void registrarSolicitud(Socio dir, @Valid Socio socio, Long actividadId, int numAcom) {
         comprobarDireccion(dir);
+        EstrategiaBloqueo estrategia = repositorioActividad.estrategiaBloqueo(actividadId).orElse(estrategiaBloqueo);
+
+        for (int intento = 0; ; intento++) {
+            ReentrantLock cerrojo = estrategia == EstrategiaBloqueo.OPTIMISTA ? cerrojosActividades.cerrojo(actividadId) : null;
+            if (cerrojo != null)
+                cerrojo.lock();
+            try {
+                transaccionPorIntento.executeWithoutResult(estado -> {
+                    Actividad actividad = repositorioActividad.buscarPorIdParaActualizar(actividadId, estrategia, esperaBloqueo)
+                            .orElseThrow(() -> new ActividadNoEncontrada("La actividad con ID " + actividadId + " no existe."));
 
-        boolean solicitudRegistrada = false;
-        int maxIntentos = 5;
-        int intentos = 0;
+                    procesarInscripcion(socio, numAcom, true, actividad);
+                });
+                return;
+            } catch (ConcurrencyFailureException e) {
+                if (intento + 1 >= MAX_INTENTOS_INSCRIPCION)
+                    throw conflictoTrasReintentos();
+            } finally {
+                if (cerrojo != null)
+                    cerrojo.unlock();
+            }
+
+            esperarReintento(intento);
+        }
+    }
 
-        while (!solicitudRegistrada && intentos < maxIntentos) {
+    /**
+     * Fija la estrategia de bloqueo de las inscripciones en una actividad (dirección).
+     *
+     * @param estrategia estrategia de la actividad, o null para que use la general
+     */
+    @Transactional
+    public void cambiarEstrategiaBloqueo(Socio dir, Long actividadId, EstrategiaBloqueo estrategia) {
+        comprobarDireccion(dir);
+        Actividad actividad = repositorioActividad.buscarPorIdSinSolicitudes(actividadId)
+                .orElseThrow(() -> new ActividadNoEncontrada("La actividad con ID " + actividadId + " no existe."));
+        actividad.setEstrategiaBloqueo(estrategia);
+    }
+
+    private static ConflictoDeConcurrenciaException conflictoTrasReintentos() {
+        return new ConflictoDeConcurrenciaException(
+                "No se pudo registrar la solicitud después de " + MAX_INTENTOS_INSCRIPCION +
+                        " intentos debido a conflictos de concurrencia. Intente nuevamente más tarde.");
+    }
+
+    /**
+     * Espera exponencial con fluctuación completa: un tiempo aleatorio entre 0 y base * 2^intento (con un máximo),
+     * para que los nodos que han chocado no vuelvan a intentarlo a la vez.
+     */
+    private static void esperarReintento(int intento) {
+        long tope = Math.min(ESPERA_MAXIMA_MS, ESPERA_BASE_MS << Math.min(intento, 16));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(tope + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictoDeConcurrenciaException("Inscripción interrumpida mientras esperaba para reintentar");
+        }
+    }
+
+    /**
+     * Registra la solicitud de un socio reservando su plaza con un UPDATE condicionado en base de datos,
+     * en lugar de cargar la actividad con todas sus solicitudes y reintentar ante conflictos de versión.
+     * Igual que en {@link Actividad#solicitarInscripcion}, sólo consume plaza el socio con la cuota pagada.
+     * La actividad se lee con su estrategia de bloqueo, o la general (ver {@link EstrategiaBloqueo}): con OPTIMISTA
+     * no se bloquea y sólo el UPDATE de la reserva espera por la fila; con PESIMISTA y SALTAR_BLOQUEADAS la fila
+     * se bloquea desde la lectura. Cada intento va en su propia transacción y, si no se consigue el bloqueo
+     * (espera agotada o actividad bloqueada), se reintenta tras una espera exponencial con fluctuación aleatoria.
+     *
+     * @param socio       socio que hace la solicitud.
+     * @param actividadId identificador de la actividad.
+     * @param numAcom     número de acompañantes del socio.
+     * @return la solicitud registrada
+     */
+    public Solicitud registrarSolicitudConReserva(Socio dir, @Valid Socio socio, Long actividadId, int numAcom) {
+        comprobarDireccion(dir);
+        EstrategiaBloqueo estrategia = repositorioActividad.estrategiaBloqueo(actividadId).orElse(estrategiaBloqueo);
+
+        for (int intento = 0; ; intento++) {
             try {
+                return transaccionPorIntento.execute(estado -> reservarPlazaYRegistrar(socio, actividadId, numAcom, estrategia));
+            } catch (ConcurrencyFailureException e) {
+                if (intento + 1 >= MAX_INTENTOS_INSCRIPCION)
+                    throw conflictoTrasReintentos();
+            }
+
+            esperarReintento(intento);
+        }
+    }
 
-                Actividad actividad = repositorioActividad.buscarPorId(actividadId)
-                        .orElseThrow(() -> new ActividadNoEncontrada("La actividad con ID " + actividadId + " no existe."));
+    private Solicitud reservarPlazaYRegistrar(Socio socio, Long actividadId, int numAcom, EstrategiaBloqueo estrategia) {
+        Actividad actividad = repositorioActividad.buscarPorIdSinSolicitudesParaActualizar(actividadId, estrategia, esperaBloqueo)
+                .orElseThrow(() -> new ActividadNoEncontrada("La actividad con ID " + actividadId + " no existe."));
 
+        if (!actividad.hayPlaza()) {
+            aforo.agotar(actividadId);
+            throw new NoHayPlazas("No hay plazas disponibles en la actividad");
+        }
+
+        // Comprobación rápida; la que vale es la restricción única al insertar (dos peticiones del mismo socio a la vez)
+        if (repositorioActividad.existeSolicitudSocio(actividadId, socio.getSocioId()))
+            throw new SolicitudYaRealizada();
 
-                procesarInscripcion(socio, numAcom, true, actividad);
-                solicitudRegistrada = true;
+        Solicitud solicitud;
+        if (socio.getEstadoCuota().equals(EstadoCuota.PAGADA)) {
+            // Primero el contador en memoria, para que a la base de datos sólo lleguen tantas reservas como plazas
+            if (!aforo.tomarPlaza(actividadId, actividad.getPlazasDisponibles()))
+                throw new NoHayPlazas("No hay plazas disponibles en la actividad");
 
-            } catch (OptimisticLockingFailureException e) {
-                intentos++;
-                if (intentos >= maxIntentos) {
-                    throw new ConflictoDeConcurrenciaException(
-                            "No se pudo registrar la solicitud después de " + maxIntentos +
-                                    " intentos debido a conflictos de concurrencia. Intente nuevamente más tarde.");
-                }
-                // Reintentar automáticamente
+            if (!repositorioActividad.reservarPlaza(actividadId)) {
+                aforo.agotar(actividadId);
+                throw new NoHayPlazas("No hay plazas disponibles en la actividad");
             }
+
+            int plazasRestantes = repositorioActividad.plazasDisponibles(actividadId);
+            solicitud = actividad.solicitudConPlazaReservada(socio, numAcom, plazasRestantes);
+            aforo.ajustar(actividadId, plazasRestantes);
+        } else {
+            solicitud = new Solicitud(socio, numAcom);
+            solicitud.setActividad(actividad);
+        }
+
+        try {
+            repositorioActividad.insertarSolicitud(solicitud);
+        } catch (DataIntegrityViolationException e) {
+            // Al salir la excepción se deshace también la reserva de la plaza
+            throw solicitudDuplicada(e) ? new SolicitudYaRealizada() : e;
+        }
+        return solicitud;
+    }
+
+    /**
+     * Indica si la violación de integridad es la de la restricción única de una solicitud por socio y actividad.
+     */
+    static boolean solicitudDuplicada(DataIntegrityViolationException e) {
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            if (causa instanceof ConstraintViolationException violacion
+                    && violacion.getConstraintName() != null
+                    && violacion.getConstraintName().toLowerCase(Locale.ROOT).contains(Solicitud.UK_ACTIVIDAD_SOCIO))
+                return true;
         }
+        return false;
     }
 
     public Solicitud modificarSolicitud(Solicitud solicitud, int nuevoNumAcom){
@@ -257,7 +603,7 @@ public class ServicioClub {
 
         repositorioActividad.eliminarSolicitud(socio.getSocioId(), solicitud, idAct);
         actividad.quitarSolicitud(solicitud);
-        repositorioActividad.actualizar(actividad);
+        repositorioActividad.actualizarConSolicitudes(actividad);
 
     }
 
@@ -0,0 +1,55 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import es.ujaen.dae.clubSocios.replicas.DataSourceEnrutado;
+import es.ujaen.dae.clubSocios.rest.dto.DTOEstadisticasCache;
+import es.ujaen.dae.clubSocios.rest.dto.DTOEstadisticasFuenteDatos;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estadísticas de funcionamiento de la aplicación, para consulta de la dirección.
+ */
+@Service
+public class ServicioEstadisticas {
+    @PersistenceUnit
+    EntityManagerFactory emf;
+
+    // Sólo existe si están habilitadas las réplicas de lectura (clubsocios.replicas.habilitadas)
+    @Autowired
+    ObjectProvider<DataSourceEnrutado> dataSourceEnrutado;
+
+    /**
+     * Aciertos, fallos e inserciones de cada región de la caché de segundo nivel de Hibernate
+     * (requiere hibernate.generate_statistics).
+     */
+    public List<DTOEstadisticasCache> estadisticasCache() {
+        Statistics estadisticas = emf.unwrap(SessionFactory.class).getStatistics();
+
+        return Arrays.stream(estadisticas.getSecondLevelCacheRegionNames())
+                .sorted()
+                .map(region -> {
+                    CacheRegionStatistics r = estadisticas.getDomainDataRegionStatistics(region);
+                    return new DTOEstadisticasCache(region, r.getHitCount(), r.getMissCount(),
+                            r.getPutCount(), r.getElementCountInMemory());
+                })
+                .toList();
+    }
+
+    /**
+     * Conexiones entregadas por la primaria y por cada réplica de lectura, y estado de las réplicas.
+     * Lista vacía si no hay réplicas configuradas.
+     */
+    public List<DTOEstadisticasFuenteDatos> estadisticasFuentesDatos() {
+        DataSourceEnrutado enrutado = dataSourceEnrutado.getIfAvailable();
+        return enrutado == null ? List.of() : enrutado.estadisticas();
+    }
+}
@@ -0,0 +1,120 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.ujaen.dae.clubSocios.entidades.RespuestaIdempotente;
+import es.ujaen.dae.clubSocios.excepciones.ClaveIdempotenciaReutilizada;
+import es.ujaen.dae.clubSocios.excepciones.PeticionEnCurso;
+import es.ujaen.dae.clubSocios.repositorios.RepositorioRespuestaIdempotente;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Peticiones idempotentes (cabecera Idempotency-Key): la primera petición con una clave reserva la clave
+ * y guarda su respuesta al terminar; las repeticiones reciben esa respuesta sin volver a ejecutarse.
+ * Las respuestas se guardan en base de datos, así que sobreviven a un reinicio, y las completadas
+ * se sirven desde una caché en memoria. Caducan pasado clubsocios.idempotencia.caducidad.
+ * <p>
+ * La respuesta se guarda cuando la petición ya ha confirmado su transacción: si la instancia se cae entre medias,
+ * la clave queda reservada sin respuesta. Por eso la reserva dura sólo clubsocios.idempotencia.reserva; pasado
+ * ese plazo, una repetición de la petición la retoma y se ejecuta de nuevo (las operaciones protegidas detectan
+ * por su cuenta la solicitud duplicada).
+ */
+@Service
+public class ServicioIdempotencia {
+    @Autowired
+    RepositorioRespuestaIdempotente repositorio;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private final Duration caducidad;
+    private final Duration reserva;
+
+    public ServicioIdempotencia(@Value("${clubsocios.idempotencia.caducidad:24h}") Duration caducidad,
+                                @Value("${clubsocios.idempotencia.reserva:30s}") Duration reserva) {
+        this.caducidad = caducidad;
+        this.reserva = reserva;
+    }
+
+    /**
+     * Reserva la clave para la petición. Si ya se respondió una petición con la misma clave, devuelve esa respuesta.
+     *
+     * @param clave    usuario y clave de idempotencia
+     * @param peticion descripción de la petición (método, ruta y parámetros)
+     * @return la respuesta guardada, o vacío si la clave queda reservada y hay que ejecutar la petición
+     * @throws PeticionEnCurso si la petición original con esa clave aún no ha terminado y su reserva no ha vencido
+     * @throws ClaveIdempotenciaReutilizada si la clave se usó para una petición distinta
+     */
+    public Optional<RespuestaIdempotente> reservar(String clave, String peticion) {
+        Optional<RespuestaIdempotente> guardada = repositorio.buscar(clave, limite());
+        if (guardada.isEmpty()) {
+            try {
+                repositorio.reservar(new RespuestaIdempotente(clave, peticion), limite());
+                return Optional.empty();
+            } catch (DataIntegrityViolationException e) {
+                // Otra petición con la misma clave se ha adelantado
+                guardada = repositorio.buscar(clave, limite());
+                if (guardada.isEmpty())
+                    throw new PeticionEnCurso();
+            }
+        }
+
+        RespuestaIdempotente respuesta = guardada.get();
+        if (!respuesta.getPeticion().equals(peticion))
+            throw new ClaveIdempotenciaReutilizada();
+        if (!respuesta.completada()) {
+            if (repositorio.retomar(clave, LocalDateTime.now().minus(reserva)))
+                return Optional.empty();
+            throw new PeticionEnCurso();
+        }
+        return guardada;
+    }
+
+    /**
+     * Guarda la respuesta de una petición cuya clave se reservó con {@link #reservar}. El cuerpo se guarda en JSON.
+     */
+    public void completar(String clave, int estado, Object cuerpo) {
+        try {
+            repositorio.completar(clave, estado, cuerpo == null ? null : objectMapper.writeValueAsString(cuerpo));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se puede guardar la respuesta de la petición " + clave, e);
+        }
+    }
+
+    /**
+     * Cuerpo de una respuesta guardada, o null si no tenía.
+     */
+    public <T> T cuerpo(RespuestaIdempotente respuesta, Class<T> tipo) {
+        if (respuesta.getCuerpo() == null)
+            return null;
+        try {
+            return objectMapper.readValue(respuesta.getCuerpo(), tipo);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se puede leer la respuesta guardada de la petición " + respuesta.getClave(), e);
+        }
+    }
+
+    /**
+     * Libera la clave de una petición que no ha llegado a responderse (error inesperado), para que se pueda reintentar.
+     */
+    public void liberar(String clave) {
+        repositorio.liberar(clave);
+    }
+
+    @Scheduled(fixedDelayString = "${clubsocios.idempotencia.intervalo-limpieza:3600000}")
+    public void borrarCaducadas() {
+        repositorio.borrarCaducadas(limite());
+    }
+
+    private LocalDateTime limite() {
+        return LocalDateTime.now().minus(caducidad);
+    }
+}
@@ -0,0 +1,29 @@
+package es.ujaen.dae.clubSocios.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conjunto fijo de cerrojos repartidos por clave (lock striping): dos claves iguales comparten siempre cerrojo
+ * y claves distintas casi nunca, sin crear un cerrojo por clave ni tener que borrarlos después.
+ * Los cerrojos son equitativos, para que ningún hilo espere mucho más que los demás en la misma clave.
+ */
+public final class CerrojosPorClave {
+    private final ReentrantLock[] cerrojos;
+
+    /**
+     * @param franjas número de cerrojos; se redondea a la potencia de dos siguiente
+     */
+    public CerrojosPorClave(int franjas) {
+        int tam = Integer.highestOneBit(Math.max(1, franjas - 1)) << 1;
+        cerrojos = new ReentrantLock[tam];
+        for (int i = 0; i < tam; i++)
+            cerrojos[i] = new ReentrantLock(true);
+    }
+
+    public ReentrantLock cerrojo(Object clave) {
+        int h = clave.hashCode();
+        // Mezcla los bits altos, como HashMap, para que claves consecutivas no caigan en franjas vecinas
+        h ^= (h >>> 16);
+        return cerrojos[h & (cerrojos.length - 1)];
+    }
+}
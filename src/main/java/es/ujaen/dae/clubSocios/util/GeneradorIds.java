@@ -0,0 +1,40 @@
+package es.ujaen.dae.clubSocios.util;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de identificadores de 64 bits ordenados en el tiempo, sin ir a base de datos.
+ * Formato: 41 bits de milisegundos desde 2024-01-01 | 10 bits de nodo | 12 bits de secuencia.
+ * Dentro de un mismo nodo los identificadores son estrictamente crecientes, aunque el reloj retroceda.
+ * El nodo se toma de la propiedad de sistema "clubsocios.nodo" o, si no está, se elige al azar.
+ */
+public final class GeneradorIds {
+    private static final long EPOCA = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final int BITS_NODO = 10;
+    private static final int BITS_SECUENCIA = 12;
+
+    private static final long NODO = Long.getLong("clubsocios.nodo", new SecureRandom().nextInt(1 << BITS_NODO))
+            & ((1L << BITS_NODO) - 1);
+
+    // Último valor entregado, como (milisegundos << BITS_SECUENCIA) | secuencia
+    private static final AtomicLong ultimo = new AtomicLong();
+
+    private GeneradorIds() {
+    }
+
+    public static long siguiente() {
+        while (true) {
+            long anterior = ultimo.get();
+            long ahora = (System.currentTimeMillis() - EPOCA) << BITS_SECUENCIA;
+            // Si se agota la secuencia del milisegundo, se toma prestado el siguiente
+            long candidato = Math.max(ahora, anterior + 1);
+            if (ultimo.compareAndSet(anterior, candidato)) {
+                long milis = candidato >>> BITS_SECUENCIA;
+                long secuencia = candidato & ((1L << BITS_SECUENCIA) - 1);
+                return (milis << (BITS_NODO + BITS_SECUENCIA)) | (NODO << BITS_SECUENCIA) | secuencia;
+            }
+        }
+    }
+}
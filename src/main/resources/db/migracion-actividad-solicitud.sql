@@ -0,0 +1,19 @@
+-- Migración de una base de datos existente (MySQL) a las solicitudes con la clave de su actividad (columna actividad_id),
+-- que permite buscar la solicitud de un socio en una actividad y hacerla única por (actividad_id, socio_id).
+--
+-- Se ejecuta una sola vez, con la aplicación parada y ANTES de arrancar la nueva versión: si una solicitud existente
+-- se quedara con actividad_id a null, la aplicación no la encontraría y dejaría al socio inscribirse otra vez.
+-- Hibernate añade después la clave ajena y la restricción única (schema-generation "update"):
+--   mysql -u club_usr -p club < migracion-actividad-solicitud.sql
+
+ALTER TABLE solicitud ADD COLUMN actividad_id BIGINT NULL;
+
+START TRANSACTION;
+
+-- Hasta ahora la relación sólo estaba en la tabla intermedia, que se mantiene mientras la aplicación la siga usando
+UPDATE solicitud s
+    JOIN actividad_solicitudes asol ON asol.solicitudes_solicitud_id = s.solicitud_id
+SET s.actividad_id = asol.actividad_id
+WHERE s.actividad_id IS NULL;
+
+COMMIT;
@@ -0,0 +1,17 @@
+-- Marca de asignación de fin de inscripción hecha (actividad.asignacion_realizada), que usa PlanificadorVencimientos.
+-- Al añadir la columna, "update" la deja a 0 en todas las actividades existentes, y el planificador haría
+-- al arrancar la asignación automática de todas las que ya terminaron su plazo, incluidas las que la dirección
+-- ya cerró a mano. Este script da por asignadas las de plazo terminado. Se ejecuta una sola vez, ANTES de arrancar
+-- la nueva versión (si la columna no existe, la crea):
+--   mysql -u club_usr -p club < migracion-asignacion-realizada.sql
+
+SET @sql = (SELECT IF(COUNT(*) = 0, 'ALTER TABLE actividad ADD COLUMN asignacion_realizada BIT NOT NULL DEFAULT 0', 'DO 0')
+            FROM information_schema.columns
+            WHERE table_schema = DATABASE()
+              AND table_name = 'actividad'
+              AND column_name = 'asignacion_realizada');
+PREPARE sentencia FROM @sql;
+EXECUTE sentencia;
+DEALLOCATE PREPARE sentencia;
+
+UPDATE actividad SET asignacion_realizada = 1 WHERE fecha_fin_inscripcion < CURDATE();
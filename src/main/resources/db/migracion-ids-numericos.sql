@@ -0,0 +1,55 @@
+-- Migración de una base de datos existente (MySQL) a los identificadores sin IDENTITY:
+-- Actividad y Temporada toman el id de las secuencias actividad_seq y temporada_seq (tablas con next_val en MySQL,
+-- de 50 en 50) y Solicitud pasa de un id de texto a uno numérico de 64 bits (GeneradorIds).
+--
+-- Se ejecuta una sola vez, con la aplicación parada y ANTES de arrancar la nueva versión, que si no crearía
+-- las secuencias empezando en 1 (colisionando con los ids existentes) y escribiría ids numéricos en la columna de texto:
+--   mysql -u club_usr -p club < migracion-ids-numericos.sql
+-- Las sentencias DDL de MySQL no son transaccionales: conviene hacer una copia de seguridad antes.
+
+-- Secuencias por encima del mayor id existente. Hibernate reserva los ids (next_val - 49 .. next_val] al leer next_val,
+-- así que el primer bloque tiene que empezar por encima de max(id)
+CREATE TABLE IF NOT EXISTS actividad_seq (next_val BIGINT) ENGINE = InnoDB;
+DELETE FROM actividad_seq;
+INSERT INTO actividad_seq (next_val) SELECT COALESCE(MAX(id), 0) + 51 FROM actividad;
+
+CREATE TABLE IF NOT EXISTS temporada_seq (next_val BIGINT) ENGINE = InnoDB;
+DELETE FROM temporada_seq;
+INSERT INTO temporada_seq (next_val) SELECT COALESCE(MAX(temporada_id), 0) + 51 FROM temporada;
+
+-- Ids numéricos para las solicitudes existentes, en orden de llegada. Son muy pequeños frente a los de GeneradorIds
+-- (milisegundos desde 2024 desplazados 22 bits), así que no colisionan y quedan antes que las solicitudes nuevas
+ALTER TABLE solicitud ADD COLUMN solicitud_id_nuevo BIGINT NULL;
+UPDATE solicitud s
+    JOIN (SELECT solicitud_id, ROW_NUMBER() OVER (ORDER BY fecha_solicitud, solicitud_id) AS n FROM solicitud) num
+        ON num.solicitud_id = s.solicitud_id
+SET s.solicitud_id_nuevo = num.n;
+
+-- La tabla intermedia actividad_solicitudes apunta a la clave antigua: se traduce a la nueva para que
+-- migracion-relaciones-sin-tabla-intermedia.sql pueda unir ambas columnas como BIGINT
+ALTER TABLE actividad_solicitudes ADD COLUMN solicitud_id_nuevo BIGINT NULL;
+UPDATE actividad_solicitudes asol
+    JOIN solicitud s ON s.solicitud_id = asol.solicitudes_solicitud_id
+SET asol.solicitud_id_nuevo = s.solicitud_id_nuevo;
+
+-- Hibernate da nombres generados a la clave ajena; se busca en el catálogo para poder borrarla
+SET @sql = (SELECT COALESCE(MAX(CONCAT('ALTER TABLE actividad_solicitudes DROP FOREIGN KEY ', constraint_name)), 'DO 0')
+            FROM information_schema.key_column_usage
+            WHERE table_schema = DATABASE()
+              AND table_name = 'actividad_solicitudes'
+              AND column_name = 'solicitudes_solicitud_id'
+              AND referenced_table_name = 'solicitud');
+PREPARE sentencia FROM @sql;
+EXECUTE sentencia;
+DEALLOCATE PREPARE sentencia;
+
+-- Al borrar la columna desaparece también su restricción única
+ALTER TABLE actividad_solicitudes DROP COLUMN solicitudes_solicitud_id;
+ALTER TABLE actividad_solicitudes CHANGE solicitud_id_nuevo solicitudes_solicitud_id BIGINT NOT NULL,
+    ADD CONSTRAINT uk_actividad_solicitudes_solicitud UNIQUE (solicitudes_solicitud_id);
+
+ALTER TABLE solicitud DROP PRIMARY KEY, DROP COLUMN solicitud_id;
+ALTER TABLE solicitud CHANGE solicitud_id_nuevo solicitud_id BIGINT NOT NULL, ADD PRIMARY KEY (solicitud_id);
+
+ALTER TABLE actividad_solicitudes
+    ADD CONSTRAINT fk_actividad_solicitudes_solicitud FOREIGN KEY (solicitudes_solicitud_id) REFERENCES solicitud (solicitud_id);
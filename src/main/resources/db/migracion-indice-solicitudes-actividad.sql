@@ -0,0 +1,15 @@
+-- Índice de los listados de solicitudes de una actividad en orden de llegada (MySQL).
+-- El primero que se creó, idx_solicitud_fecha (fecha_solicitud, solicitud_id), no empezaba por actividad_id:
+-- para listar una actividad había que recorrer las solicitudes de todas. Lo sustituye
+-- idx_solicitud_actividad_fecha (actividad_id, fecha_solicitud, solicitud_id), que Hibernate crea con "update";
+-- el antiguo no lo borra, así que se borra aquí. Se puede ejecutar con la aplicación en marcha y más de una vez:
+--   mysql -u club_usr -p club < migracion-indice-solicitudes-actividad.sql
+
+SET @sql = (SELECT IF(COUNT(*) > 0, 'DROP INDEX idx_solicitud_fecha ON solicitud', 'DO 0')
+            FROM information_schema.statistics
+            WHERE table_schema = DATABASE()
+              AND table_name = 'solicitud'
+              AND index_name = 'idx_solicitud_fecha');
+PREPARE sentencia FROM @sql;
+EXECUTE sentencia;
+DEALLOCATE PREPARE sentencia;
@@ -0,0 +1,30 @@
+-- Migración de una base de datos existente (MySQL) al modelo sin tablas intermedias:
+-- Actividad.solicitudes y Temporada.actividades pasan a ser el lado inverso de Solicitud.actividad
+-- y Actividad.temporada, y la relación queda guardada sólo en las columnas actividad_id y temporada_id.
+--
+-- Se ejecuta una sola vez, con la aplicación parada y después de que Hibernate haya añadido las columnas
+-- (schema-generation "update"):
+--   mysql -u club_usr -p club < migracion-relaciones-sin-tabla-intermedia.sql
+
+START TRANSACTION;
+
+-- Las solicitudes enlazadas sólo por la tabla intermedia (migracion-actividad-solicitud.sql ya rellenó las anteriores;
+-- quedan las que haya podido añadir una versión antigua que siguiera en marcha)
+UPDATE solicitud s
+    JOIN actividad_solicitudes asol ON asol.solicitudes_solicitud_id = s.solicitud_id
+SET s.actividad_id = asol.actividad_id
+WHERE s.actividad_id IS NULL;
+
+UPDATE actividad a
+    JOIN temporada_actividades ta ON ta.actividades_id = a.id
+SET a.temporada_id = ta.temporada_temporada_id
+WHERE a.temporada_id IS NULL;
+
+COMMIT;
+
+-- Índices de las claves ajenas (Hibernate los crea con "update" si faltan; se dejan aquí por si se migra a mano)
+-- La restricción única uk_solicitud_actividad_socio (actividad_id, socio_id) ya sirve de índice para actividad_id
+-- CREATE INDEX idx_actividad_temporada_id ON actividad (temporada_id, id);
+
+DROP TABLE actividad_solicitudes;
+DROP TABLE temporada_actividades;
@@ -0,0 +1,92 @@
+package es.ujaen.dae.clubSocios.asignacion;
+
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.entidades.Solicitud;
+import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import es.ujaen.dae.clubSocios.enums.EstadoSolicitud;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+/**
+ * Reparto de 7 plazas libres entre un grupo de 6 (con 1 plaza ya concedida), uno de 4 (con 1 plaza),
+ * un socio solo que ya tiene su plaza y un grupo de un socio con la cuota pendiente, que no recibe nada.
+ */
+public class TestMotorAsignacion {
+    Actividad actividad;
+    Solicitud grupoSeis;
+    Solicitud grupoCuatro;
+    Solicitud solo;
+    Solicitud sinPagar;
+
+    void preparar() {
+        LocalDate hoy = LocalDate.now();
+        actividad = new Actividad("Senderismo", "Ruta por la sierra", 10, 10, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1));
+        grupoSeis = actividad.solicitarInscripcion(socio("seis@gmail.com", EstadoCuota.PAGADA), 5, true);
+        grupoCuatro = actividad.solicitarInscripcion(socio("cuatro@gmail.com", EstadoCuota.PAGADA), 3, true);
+        solo = actividad.solicitarInscripcion(socio("solo@gmail.com", EstadoCuota.PAGADA), 0, true);
+        sinPagar = actividad.solicitarInscripcion(socio("sinpagar@gmail.com", EstadoCuota.PENDIENTE), 2, true);
+        for (Solicitud solicitud : List.of(grupoSeis, grupoCuatro, solo, sinPagar))
+            actividad.agregarSolicitud(solicitud);
+        grupoCuatro.setFechaSolicitud(grupoSeis.getFechaSolicitud().plusSeconds(1));
+    }
+
+    @Test
+    void testOrdenDeLlegada() {
+        preparar();
+        var resultado = actividad.asignarPlazasFinInscripcion(true, EstrategiaAsignacion.porOrdenDeLlegada());
+
+        ///El grupo de 6 recibe de una vez las 5 plazas que le faltan; el de 4, las 2 que quedan
+        assertEquals("Plazas asignadas", 7, resultado.plazasAsignadas());
+        assertEquals("Grupo de 6", 6, grupoSeis.getPlazasConcedidas());
+        assertEquals("Grupo de 6 completo", EstadoSolicitud.CERRADA, grupoSeis.getEstadoSolicitud());
+        assertEquals("Grupo de 4", 3, grupoCuatro.getPlazasConcedidas());
+        assertEquals("Grupo de 4 incompleto", EstadoSolicitud.PARCIAL, grupoCuatro.getEstadoSolicitud());
+        assertEquals("Plazas libres", 0, actividad.getPlazasDisponibles());
+        assertThat(resultado.plazasPorSolicitud()).containsOnlyKeys(grupoSeis, grupoCuatro);
+    }
+
+    @Test
+    void testPorTurnos() {
+        preparar();
+        var resultado = actividad.asignarPlazasFinInscripcion(true, EstrategiaAsignacion.porTurnos());
+
+        ///Una plaza por grupo en cada vuelta: el de 4 se completa y al de 6 le falta una
+        assertEquals("Plazas asignadas", 7, resultado.plazasAsignadas());
+        assertEquals("Grupo de 6", 5, grupoSeis.getPlazasConcedidas());
+        assertEquals("Grupo de 6 incompleto", EstadoSolicitud.PARCIAL, grupoSeis.getEstadoSolicitud());
+        assertEquals("Grupo de 4", 4, grupoCuatro.getPlazasConcedidas());
+        assertEquals("Grupo de 4 completo", EstadoSolicitud.CERRADA, grupoCuatro.getEstadoSolicitud());
+        assertEquals("Solo", 1, solo.getPlazasConcedidas());
+        assertEquals("Sin pagar", 0, sinPagar.getPlazasConcedidas());
+    }
+
+    @Test
+    void testSorteoReproducible() {
+        preparar();
+        ///El motor no modifica las solicitudes: se puede repetir el sorteo, recorriéndolas en otro orden
+        List<Solicitud> solicitudes = List.of(grupoSeis, grupoCuatro, solo, sinPagar);
+        Map<String, Integer> primero = porSocio(MotorAsignacion.asignar(solicitudes, 7, EstrategiaAsignacion.sorteo(42)));
+        Map<String, Integer> segundo = porSocio(MotorAsignacion.asignar(List.of(sinPagar, solo, grupoCuatro, grupoSeis), 7, EstrategiaAsignacion.sorteo(42)));
+
+        assertEquals("Mismo sorteo con la misma semilla", primero, segundo);
+        assertThat(primero.values().stream().mapToInt(Integer::intValue).sum()).isEqualTo(7);
+        assertThat(primero).doesNotContainKey("sinpagar@gmail.com");
+    }
+
+    private static Map<String, Integer> porSocio(ResultadoAsignacion resultado) {
+        return resultado.plazasPorSolicitud().entrySet().stream()
+                .collect(Collectors.toMap(e -> e.getKey().getSocioId(), Map.Entry::getValue));
+    }
+
+    private static Socio socio(String email, EstadoCuota estadoCuota) {
+        return new Socio(email, "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", estadoCuota);
+    }
+}
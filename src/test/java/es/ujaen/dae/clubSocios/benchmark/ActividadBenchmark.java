@@ -0,0 +1,145 @@
+package es.ujaen.dae.clubSocios.benchmark;
+
+import es.ujaen.dae.clubSocios.asignacion.EstrategiaAsignacion;
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.entidades.Solicitud;
+import es.ujaen.dae.clubSocios.enums.CriterioAsignacion;
+import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Microbenchmarks de los caminos calientes de inscripción y asignación de {@link Actividad}.
+ * Se miden throughput y ns/op; el perfil "benchmark" añade -prof gc para la tasa de asignación de memoria.
+ * Los benchmarks *Ordenando repiten la revisión de solicitudes ordenando y copiando la lista, para comparar.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="ActividadBenchmark -prof gc"
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActividadBenchmark {
+
+    /**
+     * Actividad con n solicitudes ya registradas, compartida por los benchmarks de sólo lectura.
+     */
+    @State(Scope.Benchmark)
+    public static class ActividadConSolicitudes {
+        @Param({"10", "1000", "10000", "100000"})
+        int numSolicitudes;
+
+        Actividad actividad;
+        Socio socioNuevo;
+        Long idExistente;
+
+        @Setup(Level.Trial)
+        public void preparar() {
+            actividad = crearActividad(numSolicitudes);
+            socioNuevo = socio("nuevo@gmail.com", EstadoCuota.PENDIENTE);
+            idExistente = actividad.getSolicitudes().get(numSolicitudes / 2).getSolicitudId();
+        }
+    }
+
+    /**
+     * Igual que {@link ActividadConSolicitudes}, pero se reconstruye en cada invocación porque la asignación modifica el estado.
+     */
+    @State(Scope.Thread)
+    public static class ActividadParaAsignar {
+        @Param({"10", "1000", "10000", "100000"})
+        int numSolicitudes;
+
+        @Param({"ORDEN_LLEGADA", "TURNOS", "SORTEO"})
+        CriterioAsignacion criterio;
+
+        Actividad actividad;
+
+        @Setup(Level.Invocation)
+        public void preparar() {
+            actividad = crearActividad(numSolicitudes);
+        }
+    }
+
+    @Benchmark
+    public Solicitud solicitarInscripcion(ActividadConSolicitudes estado) {
+        // Socio con cuota pendiente: recorre la comprobación de duplicados sin consumir plazas
+        return estado.actividad.solicitarInscripcion(estado.socioNuevo, 2, false);
+    }
+
+    @Benchmark
+    public List<Solicitud> revisarSolicitudes(ActividadConSolicitudes estado) {
+        return estado.actividad.revisarSolicitudes();
+    }
+
+    /**
+     * Lo que hacía revisarSolicitudes antes de mantener la lista en orden de llegada (ordenar y copiar en cada
+     * llamada), como referencia para compararlo con {@link #revisarSolicitudes}.
+     */
+    @Benchmark
+    public List<Solicitud> revisarSolicitudesOrdenando(ActividadConSolicitudes estado) {
+        return estado.actividad.getSolicitudes().stream()
+                .sorted(Comparator.comparing(Solicitud::getFechaSolicitud))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void recorrerSolicitudes(ActividadConSolicitudes estado, Blackhole agujero) {
+        for (Solicitud solicitud : estado.actividad.revisarSolicitudes())
+            agujero.consume(solicitud);
+    }
+
+    @Benchmark
+    public void recorrerSolicitudesOrdenando(ActividadConSolicitudes estado, Blackhole agujero) {
+        for (Solicitud solicitud : revisarSolicitudesOrdenando(estado))
+            agujero.consume(solicitud);
+    }
+
+    @Benchmark
+    public boolean solicitudExiste(ActividadConSolicitudes estado) {
+        return estado.actividad.solicitudExiste(estado.idExistente);
+    }
+
+    @Benchmark
+    public boolean solicitudNoExiste(ActividadConSolicitudes estado) {
+        return estado.actividad.solicitudExiste(-1L);
+    }
+
+    @Benchmark
+    public int asignarPlazasFinInscripcion(ActividadParaAsignar estado) {
+        estado.actividad.asignarPlazasFinInscripcion(true, EstrategiaAsignacion.de(estado.criterio, 42));
+        return estado.actividad.getPlazasDisponibles();
+    }
+
+    static Actividad crearActividad(int numSolicitudes) {
+        LocalDate hoy = LocalDate.now();
+        // Plazas para la mitad de los acompañantes solicitados, así la asignación no acaba en la primera vuelta
+        var actividad = new Actividad("Actividad benchmark", "Descripcion", 10, numSolicitudes * 2,
+                hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1));
+
+        // Las solicitudes se añaden en orden de llegada, como al cargarlas de la base de datos (@OrderBy)
+        Random random = new Random(42);
+        LocalDateTime base = LocalDateTime.now().minusDays(1);
+        for (int i = 0; i < numSolicitudes; i++) {
+            var socio = socio("socio" + i + "@gmail.com", i % 2 == 0 ? EstadoCuota.PAGADA : EstadoCuota.PENDIENTE);
+            var solicitud = new Solicitud(socio, random.nextInt(6));
+            solicitud.setFechaSolicitud(base.plusNanos(i * 1000L));
+            actividad.agregarSolicitud(solicitud);
+        }
+
+        return actividad;
+    }
+
+    static Socio socio(String email, EstadoCuota estadoCuota) {
+        return new Socio(email, "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", estadoCuota);
+    }
+}
@@ -0,0 +1,123 @@
+package es.ujaen.dae.clubSocios.benchmark;
+
+import es.ujaen.dae.clubSocios.app.Main;
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.entidades.Temporada;
+import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import es.ujaen.dae.clubSocios.enums.EstrategiaBloqueo;
+import es.ujaen.dae.clubSocios.servicios.ServicioClub;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark de contención de las inscripciones con cada {@link EstrategiaBloqueo}: todos los hilos inscriben socios
+ * en la misma actividad, cargándola con sus solicitudes ({@link ServicioClub#registrarSolicitud}, camino "carga")
+ * o reservando la plaza con un UPDATE condicionado ({@link ServicioClub#registrarSolicitudConReserva}, camino "reserva",
+ * el que usan el controlador y la sala de espera). El modo SampleTime da el rendimiento (número de muestras
+ * por segundo) y los percentiles p99/p99.9 de cada inscripción; los contadores auxiliares confirmadas y errores
+ * cuentan las inscripciones que han salido bien y las que han acabado en error (conflicto tras los reintentos
+ * o sin conexión libre en el pool).
+ *
+ * El número de escritores concurrentes se fija con -t:
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="BloqueoActividadBenchmark -t 8"
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="BloqueoActividadBenchmark -t 64"
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="BloqueoActividadBenchmark -t 512"
+ *
+ * H2 no admite SKIP LOCKED ni esperas por bloqueo (Hibernate genera un FOR UPDATE simple), así que con el perfil
+ * de pruebas SALTAR_BLOQUEADAS se comporta como PESIMISTA; para compararlas hay que lanzarlo contra MySQL 8.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(8)
+public class BloqueoActividadBenchmark {
+    static final int NUM_SOCIOS = 20_000;
+
+    @Param({"OPTIMISTA", "PESIMISTA", "SALTAR_BLOQUEADAS"})
+    EstrategiaBloqueo estrategia;
+
+    @Param({"carga", "reserva"})
+    String camino;
+
+    ConfigurableApplicationContext contexto;
+    ServicioClub servicio;
+    Socio direccion;
+    Long temporadaId;
+    List<Socio> socios;
+
+    Long actividadId;
+    AtomicInteger siguienteSocio;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Resultados {
+        public long confirmadas;
+        public long errores;
+
+        @Setup(Level.Iteration)
+        public void reiniciar() {
+            confirmadas = 0;
+            errores = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void arrancar() {
+        contexto = new SpringApplicationBuilder(Main.class)
+                .profiles("test")
+                .properties("server.port=0", "spring.jpa.show-sql=false", "logging.level.root=WARN")
+                .run();
+        servicio = contexto.getBean(ServicioClub.class);
+        direccion = servicio.buscarSocio("direccion@clubsocios.es").orElseThrow();
+        temporadaId = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear())).getTemporadaId();
+
+        socios = new ArrayList<>(NUM_SOCIOS);
+        for (int i = 0; i < NUM_SOCIOS; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2",
+                    "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            socios.add(socio);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void nuevaActividad() {
+        LocalDate hoy = LocalDate.now();
+        var actividad = new Actividad("Bloqueo " + UUID.randomUUID(), "Descripcion", 10, NUM_SOCIOS,
+                hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1));
+        actividadId = servicio.crearActividad(direccion, temporadaId, actividad).getId();
+        servicio.cambiarEstrategiaBloqueo(direccion, actividadId, estrategia);
+        siguienteSocio = new AtomicInteger();
+    }
+
+    @TearDown(Level.Trial)
+    public void parar() {
+        contexto.close();
+    }
+
+    @Benchmark
+    public void inscribir(Resultados resultados) {
+        try {
+            var socio = socios.get(siguienteSocio.getAndIncrement() % NUM_SOCIOS);
+            if (camino.equals("reserva"))
+                servicio.registrarSolicitudConReserva(direccion, socio, actividadId, 0);
+            else
+                servicio.registrarSolicitud(direccion, socio, actividadId, 0);
+            resultados.confirmadas++;
+        } catch (RuntimeException e) {
+            resultados.errores++;
+        }
+    }
+}
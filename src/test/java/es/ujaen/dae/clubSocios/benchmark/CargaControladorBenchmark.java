@@ -0,0 +1,121 @@
+package es.ujaen.dae.clubSocios.benchmark;
+
+import es.ujaen.dae.clubSocios.app.Main;
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Temporada;
+import es.ujaen.dae.clubSocios.servicios.ServicioClub;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prueba de carga de {@link es.ujaen.dae.clubSocios.rest.ControladorClub} con hilos de plataforma y con hilos virtuales
+ * (spring.threads.virtual.enabled): en cada operación llegan a la vez tantos clientes como indique el parámetro,
+ * y cada uno hace una búsqueda de actividades, que consulta la base de datos.
+ * El resultado es el tiempo hasta que responden todos; los contadores auxiliares "correctas" y "errores" cuentan
+ * las respuestas 200 y las que fallan (tiempo agotado, conexión rechazada o estado distinto de 200).
+ *
+ * La variante "virtual" necesita ejecutarse con Java 21 (la aplicación no arranca con hilos virtuales en una JVM
+ * anterior); con Java 17 sólo se puede medir la de plataforma. Para ver dónde se quedan fijados (pinning)
+ * los hilos virtuales, añadir -Djdk.tracePinnedThreads=short con -jvmArgsAppend.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CargaControladorBenchmark"
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CargaControladorBenchmark -p hilos=plataforma"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CargaControladorBenchmark {
+    static final int NUM_ACTIVIDADES = 200;
+
+    @Param({"plataforma", "virtual"})
+    String hilos;
+
+    @Param({"1000", "5000", "10000"})
+    int clientes;
+
+    ConfigurableApplicationContext contexto;
+    HttpClient cliente;
+    URI busqueda;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Resultados {
+        public long correctas;
+        public long errores;
+
+        @Setup(Level.Iteration)
+        public void reiniciar() {
+            correctas = 0;
+            errores = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void arrancar() {
+        contexto = new SpringApplicationBuilder(Main.class)
+                .profiles("test")
+                .properties("server.port=0", "spring.jpa.show-sql=false", "logging.level.root=WARN")
+                // Como argumento: las propiedades por defecto no pueden con la de application.yml
+                .run("--spring.threads.virtual.enabled=" + hilos.equals("virtual"));
+
+        var servicio = contexto.getBean(ServicioClub.class);
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").orElseThrow();
+        int anio = LocalDate.now().getYear();
+        Long temporadaId = servicio.crearTemporada(direccion, new Temporada(anio)).getTemporadaId();
+
+        LocalDate hoy = LocalDate.now();
+        List<Actividad> actividades = new ArrayList<>(NUM_ACTIVIDADES);
+        for (int i = 0; i < NUM_ACTIVIDADES; i++)
+            actividades.add(new Actividad("Actividad " + i, "Descripcion de la actividad " + i, 10, 30,
+                    hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+        servicio.crearActividades(direccion, temporadaId, actividades);
+
+        String puerto = contexto.getEnvironment().getProperty("local.server.port");
+        busqueda = URI.create("http://localhost:" + puerto + "/clubsocios/temporadas/" + anio + "/actividades/busqueda?texto=actividad%2019");
+        cliente = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void parar() {
+        contexto.close();
+    }
+
+    @Benchmark
+    public void clientesSimultaneos(Resultados resultados) {
+        var peticion = HttpRequest.newBuilder(busqueda).timeout(Duration.ofSeconds(60)).GET().build();
+
+        CompletableFuture<?>[] respuestas = new CompletableFuture<?>[clientes];
+        for (int i = 0; i < clientes; i++)
+            respuestas[i] = cliente.sendAsync(peticion, HttpResponse.BodyHandlers.discarding());
+
+        for (CompletableFuture<?> respuesta : respuestas) {
+            try {
+                if (((HttpResponse<?>) respuesta.join()).statusCode() == 200)
+                    resultados.correctas++;
+                else
+                    resultados.errores++;
+            } catch (CompletionException e) {
+                resultados.errores++;
+            }
+        }
+    }
+}
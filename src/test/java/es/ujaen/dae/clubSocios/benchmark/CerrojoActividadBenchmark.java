@@ -0,0 +1,124 @@
+package es.ujaen.dae.clubSocios.benchmark;
+
+import es.ujaen.dae.clubSocios.app.Main;
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.entidades.Temporada;
+import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import es.ujaen.dae.clubSocios.servicios.ServicioClub;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark del cerrojo por actividad con reintentos de {@link ServicioClub#registrarSolicitud}: los hilos inscriben
+ * socios repartidos entre "actividades" actividades. Con una sola, todas las inscripciones pasan por el mismo cerrojo;
+ * con tantas como hilos, cada hilo tiene la suya y no deberían esperarse entre ellos.
+ * El modo Throughput da las inscripciones por milisegundo y el modo SampleTime el tiempo hasta confirmar
+ * (p99, p99.9); los contadores auxiliares confirmadas y errores cuentan las que salen bien y las que acaban en error
+ * (conflicto de versión tras agotar los reintentos).
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CerrojoActividadBenchmark"
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CerrojoActividadBenchmark -p actividades=1 -t 32"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(8)
+public class CerrojoActividadBenchmark {
+    static final int NUM_SOCIOS = 20_000;
+
+    @Param({"1", "8"})
+    int actividades;
+
+    ConfigurableApplicationContext contexto;
+    ServicioClub servicio;
+    Socio direccion;
+    Long temporadaId;
+    List<Socio> socios;
+
+    List<Long> actividadIds;
+    AtomicInteger siguienteSocio;
+    AtomicInteger siguienteHilo;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Resultados {
+        public long confirmadas;
+        public long errores;
+
+        @Setup(Level.Iteration)
+        public void reiniciar() {
+            confirmadas = 0;
+            errores = 0;
+        }
+    }
+
+    /** Actividad en la que inscribe cada hilo durante la iteración */
+    @State(Scope.Thread)
+    public static class Hilo {
+        Long actividadId;
+
+        @Setup(Level.Iteration)
+        public void elegirActividad(CerrojoActividadBenchmark benchmark) {
+            actividadId = benchmark.actividadIds.get(benchmark.siguienteHilo.getAndIncrement() % benchmark.actividades);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void arrancar() {
+        contexto = new SpringApplicationBuilder(Main.class)
+                .profiles("test")
+                .properties("server.port=0", "spring.jpa.show-sql=false", "logging.level.root=WARN")
+                .run();
+        servicio = contexto.getBean(ServicioClub.class);
+        direccion = servicio.buscarSocio("direccion@clubsocios.es").orElseThrow();
+        temporadaId = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear())).getTemporadaId();
+
+        socios = new ArrayList<>(NUM_SOCIOS);
+        for (int i = 0; i < NUM_SOCIOS; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2",
+                    "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            socios.add(socio);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void nuevasActividades() {
+        LocalDate hoy = LocalDate.now();
+        actividadIds = new ArrayList<>(actividades);
+        for (int i = 0; i < actividades; i++) {
+            var actividad = new Actividad("Cerrojo " + UUID.randomUUID(), "Descripcion", 10, NUM_SOCIOS,
+                    hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1));
+            actividadIds.add(servicio.crearActividad(direccion, temporadaId, actividad).getId());
+        }
+        siguienteSocio = new AtomicInteger();
+        siguienteHilo = new AtomicInteger();
+    }
+
+    @TearDown(Level.Trial)
+    public void parar() {
+        contexto.close();
+    }
+
+    @Benchmark
+    public void inscribir(Hilo hilo, Resultados resultados) {
+        try {
+            servicio.registrarSolicitud(direccion, socios.get(siguienteSocio.getAndIncrement() % NUM_SOCIOS), hilo.actividadId, 0);
+            resultados.confirmadas++;
+        } catch (RuntimeException e) {
+            resultados.errores++;
+        }
+    }
+}
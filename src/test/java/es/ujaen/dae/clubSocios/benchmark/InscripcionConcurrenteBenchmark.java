@@ -0,0 +1,116 @@
+package es.ujaen.dae.clubSocios.benchmark;
+
+import es.ujaen.dae.clubSocios.app.Main;
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.entidades.Temporada;
+import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import es.ujaen.dae.clubSocios.servicios.ServicioClub;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark de contención: muchos hilos inscribiendo socios en la misma actividad a la vez.
+ * Compara el camino con bloqueo optimista y reintentos (registrarSolicitud) con la reserva de plaza
+ * mediante UPDATE condicionado (registrarSolicitudConReserva). Los contadores auxiliares
+ * "confirmadas" y "rechazadas" muestran cuántas inscripciones acaban en conflicto.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="InscripcionConcurrenteBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@Threads(16)
+public class InscripcionConcurrenteBenchmark {
+    static final int NUM_SOCIOS = 20_000;
+
+    ConfigurableApplicationContext contexto;
+    ServicioClub servicio;
+    Socio direccion;
+    Long temporadaId;
+    List<Socio> socios;
+
+    Long actividadId;
+    AtomicInteger siguienteSocio;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Resultados {
+        public long confirmadas;
+        public long rechazadas;
+
+        @Setup(Level.Iteration)
+        public void reiniciar() {
+            confirmadas = 0;
+            rechazadas = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void arrancar() {
+        contexto = new SpringApplicationBuilder(Main.class)
+                .profiles("test")
+                .properties("server.port=0", "spring.jpa.show-sql=false", "logging.level.root=WARN")
+                .run();
+        servicio = contexto.getBean(ServicioClub.class);
+        direccion = servicio.buscarSocio("direccion@clubsocios.es").orElseThrow();
+        temporadaId = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear())).getTemporadaId();
+
+        socios = new ArrayList<>(NUM_SOCIOS);
+        for (int i = 0; i < NUM_SOCIOS; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2",
+                    "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            socios.add(socio);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void nuevaActividad() {
+        LocalDate hoy = LocalDate.now();
+        var actividad = new Actividad("Concurrencia " + UUID.randomUUID(), "Descripcion", 10, NUM_SOCIOS,
+                hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1));
+        actividadId = servicio.crearActividad(direccion, temporadaId, actividad).getId();
+        siguienteSocio = new AtomicInteger();
+    }
+
+    @TearDown(Level.Trial)
+    public void parar() {
+        contexto.close();
+    }
+
+    @Benchmark
+    public void registrarConReintentos(Resultados resultados) {
+        try {
+            servicio.registrarSolicitud(direccion, siguienteSocio(), actividadId, 0);
+            resultados.confirmadas++;
+        } catch (RuntimeException e) {
+            resultados.rechazadas++;
+        }
+    }
+
+    @Benchmark
+    public void registrarConReserva(Resultados resultados) {
+        try {
+            servicio.registrarSolicitudConReserva(direccion, siguienteSocio(), actividadId, 0);
+            resultados.confirmadas++;
+        } catch (RuntimeException e) {
+            resultados.rechazadas++;
+        }
+    }
+
+    private Socio siguienteSocio() {
+        return socios.get(siguienteSocio.getAndIncrement() % NUM_SOCIOS);
+    }
+}
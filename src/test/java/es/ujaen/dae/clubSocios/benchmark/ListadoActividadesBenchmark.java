@@ -0,0 +1,73 @@
+package es.ujaen.dae.clubSocios.benchmark;
+
+import es.ujaen.dae.clubSocios.app.Main;
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Temporada;
+import es.ujaen.dae.clubSocios.rest.dto.DTOActividad;
+import es.ujaen.dae.clubSocios.rest.dto.Mapeador;
+import es.ujaen.dae.clubSocios.servicios.ServicioClub;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listado de las actividades de una temporada con 5000 actividades: carga de entidades y mapeo con
+ * {@link Mapeador} frente a la proyección directa a {@link DTOActividad}. Con -prof gc (opción por defecto
+ * del perfil "benchmark") se ve la memoria asignada por operación.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="ListadoActividadesBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListadoActividadesBenchmark {
+    static final int NUM_ACTIVIDADES = 5000;
+
+    ConfigurableApplicationContext contexto;
+    ServicioClub servicio;
+    Mapeador mapeador;
+    Long temporadaId;
+
+    @Setup(Level.Trial)
+    public void arrancar() {
+        contexto = new SpringApplicationBuilder(Main.class)
+                .profiles("test")
+                .properties("server.port=0", "spring.jpa.show-sql=false", "logging.level.root=WARN")
+                .run();
+        servicio = contexto.getBean(ServicioClub.class);
+        mapeador = contexto.getBean(Mapeador.class);
+
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").orElseThrow();
+        temporadaId = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear())).getTemporadaId();
+
+        LocalDate hoy = LocalDate.now();
+        List<Actividad> actividades = new ArrayList<>(NUM_ACTIVIDADES);
+        for (int i = 0; i < NUM_ACTIVIDADES; i++)
+            actividades.add(new Actividad("Actividad " + i, "Descripcion de la actividad " + i, 10, 30,
+                    hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+        servicio.crearActividades(direccion, temporadaId, actividades);
+    }
+
+    @TearDown(Level.Trial)
+    public void parar() {
+        contexto.close();
+    }
+
+    @Benchmark
+    public List<DTOActividad> entidadesYMapeo() {
+        return servicio.obtenerActividadesTemporada(temporadaId).stream().map(a -> mapeador.dto(a)).toList();
+    }
+
+    @Benchmark
+    public List<DTOActividad> proyeccionDto() {
+        return servicio.listadoActividadesTemporada(temporadaId);
+    }
+}
@@ -8,6 +8,7 @@ import jakarta.validation.Validation;
 import jakarta.validation.Validator;
 import org.junit.jupiter.api.Test;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDate;
 import java.util.Set;
@@ -135,4 +136,62 @@ public class TestActividad {
 
         assertEquals("Debe haber 2 solicitudes en la actividad", 2, actividad.revisarSolicitudes().size());
     }
+
+    /**
+     * Comprueba que las solicitudes quedan en orden de llegada aunque se añadan desordenadas
+     * y que la revisión devuelve una vista de sólo lectura.
+     */
+    @Test
+    @DirtiesContext
+    void testOrdenLlegadaSolicitudes() {
+        LocalDate hoy = LocalDate.now();
+        var actividad = new Actividad("Clases de flamenco", "Aqui se dara clases de flamenco", 35, 4, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1));
+        var socio1 = new Socio("prueba@gmail.com", "Pedro", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PENDIENTE);
+        var socio2 = new Socio("tomas@gmail.com", "Tomás", "A1 A2", "11111111M", "690123456", "123456", EstadoCuota.PENDIENTE);
+        var socio3 = new Socio("ana@gmail.com", "Ana", "A1 A2", "11111111M", "690123456", "123456", EstadoCuota.PENDIENTE);
+
+        var solicitud1 = new Solicitud(socio1, 1);
+        var solicitud2 = new Solicitud(socio2, 1);
+        var solicitud3 = new Solicitud(socio3, 0);
+        // A igual fecha desempata el id, que crece con el tiempo
+        solicitud2.setFechaSolicitud(solicitud1.getFechaSolicitud());
+        solicitud3.setFechaSolicitud(solicitud1.getFechaSolicitud().minusMinutes(1));
+
+        actividad.agregarSolicitud(solicitud2);
+        actividad.agregarSolicitud(solicitud1);
+        actividad.agregarSolicitud(solicitud3);
+
+        assertThat(actividad.revisarSolicitudes()).containsExactly(solicitud3, solicitud1, solicitud2);
+        assertThatThrownBy(() -> actividad.revisarSolicitudes().clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    /**
+     * Comprueba que la búsqueda de solicitudes por socio y por id sigue a las altas y bajas,
+     * incluso cuando se quita una copia de la solicitud y no la misma instancia.
+     */
+    @Test
+    @DirtiesContext
+    void testIndiceSolicitudes() {
+        LocalDate hoy = LocalDate.now();
+        var actividad = new Actividad("Clases de flamenco", "Aqui se dara clases de flamenco", 35, 4, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1));
+        var socio1 = new Socio("prueba@gmail.com", "Pedro", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PENDIENTE);
+        var socio2 = new Socio("tomas@gmail.com", "Tomás", "A1 A2", "11111111M", "690123456", "123456", EstadoCuota.PENDIENTE);
+
+        var solicitud1 = new Solicitud(socio1, 1);
+        actividad.agregarSolicitud(solicitud1);
+        assertThat(actividad.solicitudExiste(solicitud1.getSolicitudId())).isTrue();
+        assertThatThrownBy(() -> actividad.solicitarInscripcion(socio1, 2, false)).isInstanceOf(SolicitudYaRealizada.class);
+
+        var solicitud2 = new Solicitud(socio2, 1);
+        actividad.agregarSolicitud(solicitud2);
+        assertThat(actividad.solicitudExiste(solicitud2.getSolicitudId())).isTrue();
+
+        var copia = new Solicitud(socio1, 1);
+        ReflectionTestUtils.setField(copia, "solicitudId", solicitud1.getSolicitudId());
+        actividad.quitarSolicitud(copia);
+
+        assertThat(actividad.getSolicitudes()).containsExactly(solicitud2);
+        assertThat(actividad.solicitudExiste(solicitud1.getSolicitudId())).isFalse();
+        assertDoesNotThrow(() -> actividad.solicitarInscripcion(socio1, 2, false));
+    }
 }
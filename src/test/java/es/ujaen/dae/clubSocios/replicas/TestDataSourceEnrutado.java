@@ -0,0 +1,142 @@
+package es.ujaen.dae.clubSocios.replicas;
+
+import es.ujaen.dae.clubSocios.rest.dto.DTOEstadisticasFuenteDatos;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.Database;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Enrutado entre dos bases de datos H2 en memoria: una hace de primaria y otra de réplica.
+ * Cada una tiene una fila que dice cuál es, y la réplica una tabla con el retraso simulado.
+ */
+public class TestDataSourceEnrutado {
+    DriverManagerDataSource primaria;
+    DriverManagerDataSource replica;
+    DataSourceEnrutado enrutado;
+    LazyConnectionDataSourceProxy dataSource;
+    JdbcTemplate jdbc;
+    TransactionTemplate escritura;
+    TransactionTemplate lectura;
+
+    @BeforeEach
+    void preparar() {
+        primaria = new DriverManagerDataSource("jdbc:h2:mem:primaria;DB_CLOSE_DELAY=-1");
+        replica = new DriverManagerDataSource("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1");
+        new JdbcTemplate(primaria).execute("create table origen (nombre varchar(20)); insert into origen values ('primaria')");
+        new JdbcTemplate(replica).execute("create table origen (nombre varchar(20)); insert into origen values ('replica');" +
+                "create table estado_replica (retraso int); insert into estado_replica values (0)");
+
+        enrutado = new DataSourceEnrutado(primaria, Map.of("replica-0", replica), Duration.ofSeconds(5),
+                Duration.ZERO, "select retraso from estado_replica");
+        enrutado.afterPropertiesSet();
+
+        dataSource = new LazyConnectionDataSourceProxy(enrutado);
+        jdbc = new JdbcTemplate(dataSource);
+        var gestorTransacciones = new DataSourceTransactionManager(dataSource);
+        escritura = new TransactionTemplate(gestorTransacciones);
+        lectura = new TransactionTemplate(gestorTransacciones);
+        lectura.setReadOnly(true);
+    }
+
+    @AfterEach
+    void cerrar() throws Exception {
+        enrutado.destroy();
+        new JdbcTemplate(primaria).execute("drop all objects");
+        new JdbcTemplate(replica).execute("drop all objects");
+    }
+
+    String origen(TransactionTemplate transaccion) {
+        return transaccion.execute(estado -> jdbc.queryForObject("select nombre from origen", String.class));
+    }
+
+    @Test
+    void testLecturasAReplicaYEscriturasAPrimaria() {
+        // La primera conexión del proxy lee en la primaria los valores por defecto (autocommit, aislamiento)
+        assertThat(origen(lectura)).isEqualTo("replica");
+        assertThat(enrutado.estadisticas())
+                .extracting(DTOEstadisticasFuenteDatos::nombre, DTOEstadisticasFuenteDatos::conexiones)
+                .containsExactly(tuple("primaria", 1L), tuple("replica-0", 1L));
+
+        assertThat(origen(escritura)).isEqualTo("primaria");
+        assertThat(origen(lectura)).isEqualTo("replica");
+        assertThat(enrutado.estadisticas())
+                .extracting(DTOEstadisticasFuenteDatos::nombre, DTOEstadisticasFuenteDatos::conexiones)
+                .containsExactly(tuple("primaria", 2L), tuple("replica-0", 2L));
+    }
+
+    /**
+     * Lo mismo con las transacciones de JPA, que es como las usa la aplicación: JpaTransactionManager pide
+     * la conexión al empezar la transacción, antes de marcarla como de sólo lectura.
+     */
+    @Test
+    void testTransaccionesJpa() {
+        var vendedor = new HibernateJpaVendorAdapter();
+        vendedor.setDatabase(Database.H2);
+        var fabrica = new LocalContainerEntityManagerFactoryBean();
+        fabrica.setDataSource(dataSource);
+        fabrica.setJpaVendorAdapter(vendedor);
+        fabrica.setPackagesToScan(getClass().getPackageName());
+        fabrica.afterPropertiesSet();
+        var emf = fabrica.getObject();
+        try {
+            var em = SharedEntityManagerCreator.createSharedEntityManager(emf);
+            var gestorTransacciones = new JpaTransactionManager(emf);
+            var escrituraJpa = new TransactionTemplate(gestorTransacciones);
+            var lecturaJpa = new TransactionTemplate(gestorTransacciones);
+            lecturaJpa.setReadOnly(true);
+
+            Object leido = lecturaJpa.execute(estado -> em.createNativeQuery("select nombre from origen").getSingleResult());
+            assertThat(leido).isEqualTo("replica");
+            escrituraJpa.executeWithoutResult(estado ->
+                    em.createNativeQuery("insert into origen values ('escrita')").executeUpdate());
+            assertThat(new JdbcTemplate(primaria).queryForList("select nombre from origen", String.class))
+                    .containsExactly("primaria", "escrita");
+            assertThat(new JdbcTemplate(replica).queryForList("select nombre from origen", String.class))
+                    .containsExactly("replica");
+        } finally {
+            fabrica.destroy();
+        }
+    }
+
+    @Test
+    void testReplicaConRetrasoSeDesviaAPrimaria() {
+        new JdbcTemplate(replica).update("update estado_replica set retraso = 60");
+        enrutado.comprobarReplicas();
+
+        assertThat(origen(lectura)).isEqualTo("primaria");
+        var estadisticas = enrutado.estadisticas();
+        assertThat(estadisticas.get(0).lecturasDesviadas()).isEqualTo(1);
+        assertThat(estadisticas.get(1).disponible()).isFalse();
+        assertThat(estadisticas.get(1).retrasoSegundos()).isEqualTo(60);
+
+        // Al ponerse al día, vuelve a recibir lecturas
+        new JdbcTemplate(replica).update("update estado_replica set retraso = 1");
+        enrutado.comprobarReplicas();
+        assertThat(origen(lectura)).isEqualTo("replica");
+    }
+
+    @Test
+    void testReplicaCaidaSeDesviaAPrimaria() {
+        new JdbcTemplate(replica).execute("drop table estado_replica");
+        enrutado.comprobarReplicas();
+
+        assertThat(origen(lectura)).isEqualTo("primaria");
+        assertThat(enrutado.estadisticas().get(1).retrasoSegundos()).isNull();
+    }
+}
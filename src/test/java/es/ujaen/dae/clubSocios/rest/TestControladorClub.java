@@ -1,5 +1,7 @@
 package es.ujaen.dae.clubSocios.rest;
 import es.ujaen.dae.clubSocios.rest.dto.*;
+import es.ujaen.dae.clubSocios.security.CacheUsuarios;
+import es.ujaen.dae.clubSocios.security.ServicioTokens;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,9 +10,11 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
@@ -18,10 +22,16 @@ import org.springframework.test.context.ActiveProfiles;
 import es.ujaen.dae.clubSocios.enums.EstadoCuota;
 
 import java.security.Principal;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.springframework.test.util.AssertionErrors.assertEquals;
 
 @SpringBootTest(classes = es.ujaen.dae.clubSocios.app.Main.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -34,6 +44,9 @@ public class TestControladorClub {
     @Autowired
     PasswordEncoder passwordEncoder;
 
+    @Autowired
+    CacheUsuarios cacheUsuarios;
+
     private TestRestTemplate testRestTemplate;
 
     @BeforeEach
@@ -843,4 +856,286 @@ public class TestControladorClub {
          assertEquals("No debería tener solicitudes ", 0, respuestaSolicitudSocio.getBody().length);
      }
 
-}
\ No newline at end of file
+    @Test
+    @DirtiesContext
+    void testPaginacionActividadesYSolicitudes() {
+        int anio = LocalDate.now().getYear();
+        LocalDate hoy = LocalDate.now();
+        var direccion = testRestTemplate.withBasicAuth("direccion@clubsocios.es", "serviceSecret");
+
+        direccion.postForEntity("/temporadas", new DTOTemporada(null, anio), Void.class);
+        for (int i = 0; i < 5; i++) {
+            DTOActividad dtoActividad = new DTOActividad(null, "Actividad " + i, "Descripcion", 10, 30, 30,
+                    hoy.minusDays(1), hoy.plusDays(1), hoy.plusDays(2));
+            direccion.postForEntity("/temporadas/{anio}/actividades", dtoActividad, DTOActividad.class, anio);
+        }
+
+        ///Las actividades se recorren en páginas de 2 siguiendo el cursor
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        int paginas = 0;
+        do {
+            ResponseEntity<DTOActividad[]> pagina = testRestTemplate.getForEntity(
+                    "/temporadas/{anio}/actividades?limite=2" + (cursor == null ? "" : "&cursor=" + cursor),
+                    DTOActividad[].class, anio);
+            assertEquals("status", HttpStatus.OK, pagina.getStatusCode());
+            Arrays.stream(Objects.requireNonNull(pagina.getBody())).forEach(a -> ids.add(a.id()));
+            cursor = pagina.getHeaders().getFirst("X-Siguiente-Cursor");
+            paginas++;
+        } while (cursor != null);
+
+        assertEquals("numero de paginas", 3, paginas);
+        assertThat(ids).hasSize(5).isSorted().doesNotHaveDuplicates();
+
+        ///Sin límite se devuelve una página del tamaño por defecto; aquí caben todas y no hay página siguiente
+        ResponseEntity<DTOActividad[]> completo = testRestTemplate.getForEntity("/temporadas/{anio}/actividades", DTOActividad[].class, anio);
+        assertThat(completo.getBody()).extracting(DTOActividad::id).containsExactlyElementsOf(ids);
+        assertThat(completo.getHeaders().containsKey("X-Siguiente-Cursor")).isFalse();
+        assertEquals("límite por defecto", CursorPaginacion.LIMITE_POR_DEFECTO, CursorPaginacion.tamPagina(null));
+        assertEquals("límite acotado", CursorPaginacion.LIMITE_MAXIMO, CursorPaginacion.tamPagina(1000));
+
+        ///Tres socios se apuntan a la primera actividad; la dirección las recibe en orden de llegada, de 2 en 2
+        Long idAct = ids.get(0);
+        for (int i = 0; i < 3; i++) {
+            String email = "socio" + i + "@gmail.com";
+            testRestTemplate.postForEntity("/socios", new DTOSocio(email, "Socio", "Apellido1", "12345678A",
+                    "690123456", "123456", EstadoCuota.PAGADA), Void.class);
+            testRestTemplate.withBasicAuth(email, "123456").postForEntity(
+                    "/temporadas/{anio}/actividades/{idact}/solicitudes?emailSocio={email}&numAcom=0",
+                    null, DTOSolicitud.class, anio, idAct, email);
+        }
+
+        ResponseEntity<DTOSolicitud[]> primera = direccion.getForEntity(
+                "/temporadas/{anio}/actividades/{idact}/solicitudes?limite=2", DTOSolicitud[].class, anio, idAct);
+        assertEquals("status", HttpStatus.OK, primera.getStatusCode());
+        assertThat(primera.getBody()).extracting(DTOSolicitud::idSocio).containsExactly("socio0@gmail.com", "socio1@gmail.com");
+
+        ///Los ids de solicitud (64 bits) viajan como texto
+        ResponseEntity<String> json = direccion.getForEntity(
+                "/temporadas/{anio}/actividades/{idact}/solicitudes?limite=1", String.class, anio, idAct);
+        assertThat(json.getBody()).contains("\"id\":\"" + primera.getBody()[0].id() + "\"");
+
+        ResponseEntity<DTOSolicitud[]> segunda = direccion.getForEntity(
+                "/temporadas/{anio}/actividades/{idact}/solicitudes?limite=2&cursor={cursor}", DTOSolicitud[].class,
+                anio, idAct, primera.getHeaders().getFirst("X-Siguiente-Cursor"));
+        assertThat(segunda.getBody()).extracting(DTOSolicitud::idSocio).containsExactly("socio2@gmail.com");
+        assertThat(segunda.getHeaders().containsKey("X-Siguiente-Cursor")).isFalse();
+
+        ResponseEntity<DTOSolicitud[]> todas = direccion.getForEntity(
+                "/temporadas/{anio}/actividades/{idact}/solicitudes", DTOSolicitud[].class, anio, idAct);
+        assertThat(todas.getBody()).extracting(DTOSolicitud::idSocio)
+                .containsExactly("socio0@gmail.com", "socio1@gmail.com", "socio2@gmail.com");
+
+        ResponseEntity<DTOSolicitud[]> cursorInvalido = direccion.getForEntity(
+                "/temporadas/{anio}/actividades/{idact}/solicitudes?cursor=xx", DTOSolicitud[].class, anio, idAct);
+        assertEquals("status", HttpStatus.BAD_REQUEST, cursorInvalido.getStatusCode());
+    }
+
+    @Test
+    @DirtiesContext
+    void testSolicitudIdempotente() {
+        int anio = LocalDate.now().getYear();
+        LocalDate hoy = LocalDate.now();
+        var direccion = testRestTemplate.withBasicAuth("direccion@clubsocios.es", "serviceSecret");
+        direccion.postForEntity("/temporadas", new DTOTemporada(null, anio), Void.class);
+        direccion.postForEntity("/temporadas/{anio}/actividades",
+                new DTOActividad(null, "Yoga", "Clases de yoga", 10, 30, 30, hoy.minusDays(1), hoy.plusDays(1), hoy.plusDays(2)),
+                DTOActividad.class, anio);
+        Long idAct = Objects.requireNonNull(testRestTemplate.getForEntity(
+                "/temporadas/{anio}/actividades", DTOActividad[].class, anio).getBody())[0].id();
+
+        testRestTemplate.postForEntity("/socios", new DTOSocio("prueba@gmail.com", "Pedro", "Apellido1", "12345678A",
+                "690123456", "123456", EstadoCuota.PAGADA), Void.class);
+        var socio = testRestTemplate.withBasicAuth("prueba@gmail.com", "123456");
+
+        HttpHeaders cabeceras = new HttpHeaders();
+        cabeceras.set("Idempotency-Key", "alta-yoga-1");
+        var conClave = new HttpEntity<>(cabeceras);
+
+        ///El reintento con la misma clave recibe la misma respuesta y no crea otra solicitud
+        for (int i = 0; i < 2; i++) {
+            ResponseEntity<DTOSolicitud> alta = socio.exchange(
+                    "/temporadas/{anio}/actividades/{idact}/solicitudes?emailSocio={emailSocio}&numAcom={numAcom}",
+                    HttpMethod.POST, conClave, DTOSolicitud.class, anio, idAct, "prueba@gmail.com", 2);
+            assertEquals("Estado post", HttpStatus.CREATED, alta.getStatusCode());
+        }
+
+        ResponseEntity<DTOSolicitud[]> solicitudes = direccion.getForEntity(
+                "/temporadas/{anio}/actividades/{idact}/solicitudes", DTOSolicitud[].class, anio, idAct);
+        assertThat(solicitudes.getBody()).hasSize(1);
+
+        ///La misma clave con otra petición es un error del cliente
+        ResponseEntity<DTOSolicitud> otra = socio.exchange(
+                "/temporadas/{anio}/actividades/{idact}/solicitudes?emailSocio={emailSocio}&numAcom={numAcom}",
+                HttpMethod.POST, conClave, DTOSolicitud.class, anio, idAct, "prueba@gmail.com", 3);
+        assertEquals("Clave reutilizada", HttpStatus.UNPROCESSABLE_ENTITY, otra.getStatusCode());
+
+        ///Sin clave, repetir el alta es un conflicto
+        ResponseEntity<DTOSolicitud> sinClave = socio.postForEntity(
+                "/temporadas/{anio}/actividades/{idact}/solicitudes?emailSocio={emailSocio}&numAcom={numAcom}",
+                null, DTOSolicitud.class, anio, idAct, "prueba@gmail.com", 2);
+        assertEquals("Sin clave", HttpStatus.CONFLICT, sinClave.getStatusCode());
+
+        ///La modificación repetida devuelve el cuerpo guardado
+        cabeceras.set("Idempotency-Key", "cambio-yoga-1");
+        List<DTOSolicitud> cuerpos = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            ResponseEntity<DTOSolicitud> cambio = socio.exchange(
+                    "/temporadas/{anio}/actividades/{idact}/solicitudes?emailSocio={emailSocio}&nuevosAcom={nuevosAcom}",
+                    HttpMethod.PUT, new HttpEntity<>(cabeceras), DTOSolicitud.class, anio, idAct, "prueba@gmail.com", 4);
+            assertEquals("status", HttpStatus.OK, cambio.getStatusCode());
+            cuerpos.add(cambio.getBody());
+        }
+        assertEquals("numAcom", 4, Objects.requireNonNull(cuerpos.get(0)).numAcom());
+        assertEquals("Respuesta repetida", cuerpos.get(0), cuerpos.get(1));
+    }
+
+    @Test
+    @DirtiesContext
+    void testEstrategiaBloqueoActividad() {
+        int anio = LocalDate.now().getYear();
+        LocalDate hoy = LocalDate.now();
+        var direccion = testRestTemplate.withBasicAuth("direccion@clubsocios.es", "serviceSecret");
+        direccion.postForEntity("/temporadas", new DTOTemporada(null, anio), Void.class);
+        direccion.postForEntity("/temporadas/{anio}/actividades",
+                new DTOActividad(null, "Yoga", "Clases de yoga", 10, 30, 30, hoy.minusDays(1), hoy.plusDays(1), hoy.plusDays(2)),
+                DTOActividad.class, anio);
+        Long idAct = Objects.requireNonNull(testRestTemplate.getForEntity(
+                "/temporadas/{anio}/actividades", DTOActividad[].class, anio).getBody())[0].id();
+
+        testRestTemplate.postForEntity("/socios", new DTOSocio("prueba@gmail.com", "Pedro", "Apellido1", "12345678A",
+                "690123456", "123456", EstadoCuota.PAGADA), Void.class);
+        var socio = testRestTemplate.withBasicAuth("prueba@gmail.com", "123456");
+
+        String estrategia = "/temporadas/{anio}/actividades/{idact}/estrategia-bloqueo?estrategia={estrategia}";
+        assertEquals("Debe ser admin", HttpStatus.FORBIDDEN,
+                socio.exchange(estrategia, HttpMethod.PUT, HttpEntity.EMPTY, Void.class, anio, idAct, "PESIMISTA").getStatusCode());
+        assertEquals("Actividad inexistente", HttpStatus.NOT_FOUND,
+                direccion.exchange(estrategia, HttpMethod.PUT, HttpEntity.EMPTY, Void.class, anio, idAct + 1, "PESIMISTA").getStatusCode());
+        assertEquals("Estrategia desconocida", HttpStatus.BAD_REQUEST,
+                direccion.exchange(estrategia, HttpMethod.PUT, HttpEntity.EMPTY, Void.class, anio, idAct, "OTRA").getStatusCode());
+        assertEquals("Estrategia fijada", HttpStatus.NO_CONTENT,
+                direccion.exchange(estrategia, HttpMethod.PUT, HttpEntity.EMPTY, Void.class, anio, idAct, "PESIMISTA").getStatusCode());
+
+        ///La inscripción usa la estrategia de la actividad
+        ResponseEntity<DTOSolicitud> alta = socio.postForEntity(
+                "/temporadas/{anio}/actividades/{idact}/solicitudes?emailSocio={emailSocio}&numAcom={numAcom}",
+                null, DTOSolicitud.class, anio, idAct, "prueba@gmail.com", 0);
+        assertEquals("Estado post", HttpStatus.CREATED, alta.getStatusCode());
+    }
+
+    @Test
+    @DirtiesContext
+    void testSalaEsperaSoloPropioSocio() {
+        int anio = LocalDate.now().getYear();
+        LocalDate hoy = LocalDate.now();
+        var direccion = testRestTemplate.withBasicAuth("direccion@clubsocios.es", "serviceSecret");
+        direccion.postForEntity("/temporadas", new DTOTemporada(null, anio), Void.class);
+        direccion.postForEntity("/temporadas/{anio}/actividades",
+                new DTOActividad(null, "Yoga", "Clases de yoga", 10, 30, 30, hoy.minusDays(1), hoy.plusDays(1), hoy.plusDays(2)),
+                DTOActividad.class, anio);
+        Long idAct = Objects.requireNonNull(testRestTemplate.getForEntity(
+                "/temporadas/{anio}/actividades", DTOActividad[].class, anio).getBody())[0].id();
+
+        for (String email : List.of("socio0@gmail.com", "socio1@gmail.com"))
+            testRestTemplate.postForEntity("/socios", new DTOSocio(email, "Socio", "Apellido1", "12345678A",
+                    "690123456", "123456", EstadoCuota.PAGADA), Void.class);
+        var socio0 = testRestTemplate.withBasicAuth("socio0@gmail.com", "123456");
+        var socio1 = testRestTemplate.withBasicAuth("socio1@gmail.com", "123456");
+
+        ///Un socio no puede pedir turno en nombre de otro
+        ResponseEntity<DTOTurno> ajeno = socio0.postForEntity(
+                "/temporadas/{anio}/actividades/{idact}/sala-espera?emailSocio={email}&numAcom=0",
+                null, DTOTurno.class, anio, idAct, "socio1@gmail.com");
+        assertEquals("Turno para otro socio", HttpStatus.FORBIDDEN, ajeno.getStatusCode());
+
+        ResponseEntity<DTOTurno> propio = socio0.postForEntity(
+                "/temporadas/{anio}/actividades/{idact}/sala-espera?emailSocio={email}&numAcom=0",
+                null, DTOTurno.class, anio, idAct, "socio0@gmail.com");
+        assertEquals("Turno propio", HttpStatus.ACCEPTED, propio.getStatusCode());
+        String idTurno = Objects.requireNonNull(propio.getBody()).id();
+
+        ///El turno solo lo consultan su socio y la dirección
+        assertEquals("Turno de otro socio", HttpStatus.FORBIDDEN,
+                socio1.getForEntity("/sala-espera/{id}", DTOTurno.class, idTurno).getStatusCode());
+        assertEquals("Turno propio", HttpStatus.OK,
+                socio0.getForEntity("/sala-espera/{id}", DTOTurno.class, idTurno).getStatusCode());
+        assertEquals("Turno desde la dirección", HttpStatus.OK,
+                direccion.getForEntity("/sala-espera/{id}", DTOTurno.class, idTurno).getStatusCode());
+    }
+
+    @Test
+    @DirtiesContext
+    void testAutenticacionToken() {
+        // Con HttpURLConnection no se puede leer un 401 a un POST, así que esta prueba usa el cliente HTTP del JDK
+        var cliente = new TestRestTemplate(new RestTemplateBuilder()
+                .rootUri("http://localhost:" + localPort + "/clubsocios")
+                .requestFactory(JdkClientHttpRequestFactory.class));
+        cliente.postForEntity("/socios", new DTOSocio("prueba@gmail.com", "Pedro", "Apellido1", "12345678A",
+                "690123456", "123456", EstadoCuota.PAGADA), Void.class);
+
+        ///Sin credenciales o con una contraseña errónea no hay token
+        assertEquals("Sin credenciales", HttpStatus.UNAUTHORIZED,
+                cliente.postForEntity("/autenticacion", null, DTOToken.class).getStatusCode());
+        assertEquals("Contraseña errónea", HttpStatus.UNAUTHORIZED, cliente.withBasicAuth("prueba@gmail.com", "654321")
+                .postForEntity("/autenticacion", null, DTOToken.class).getStatusCode());
+
+        ResponseEntity<DTOToken> respuesta = cliente.withBasicAuth("direccion@clubsocios.es", "serviceSecret")
+                .postForEntity("/autenticacion", null, DTOToken.class);
+        assertEquals("Token de la dirección", HttpStatus.OK, respuesta.getStatusCode());
+        String tokenDireccion = Objects.requireNonNull(respuesta.getBody()).token();
+        assertThat(respuesta.getBody().caducidad()).isAfter(java.time.Instant.now());
+
+        String tokenSocio = Objects.requireNonNull(cliente.withBasicAuth("prueba@gmail.com", "123456")
+                .postForEntity("/autenticacion", null, DTOToken.class).getBody()).token();
+
+        ///El token lleva los roles: la dirección puede crear la temporada y el socio no
+        int anio = LocalDate.now().getYear();
+        assertEquals("Temporada con token de socio", HttpStatus.FORBIDDEN,
+                conToken(cliente, tokenSocio, HttpMethod.POST, "/temporadas", new DTOTemporada(null, anio)).getStatusCode());
+        assertEquals("Temporada con token de la dirección", HttpStatus.CREATED,
+                conToken(cliente, tokenDireccion, HttpMethod.POST, "/temporadas", new DTOTemporada(null, anio)).getStatusCode());
+
+        ///Un token alterado no vale, y un token no sirve para pedir otro
+        String alterado = tokenSocio.substring(0, tokenSocio.length() - 2) + (tokenSocio.endsWith("AA") ? "BB" : "AA");
+        assertEquals("Token alterado", HttpStatus.UNAUTHORIZED,
+                conToken(cliente, alterado, HttpMethod.POST, "/temporadas", new DTOTemporada(null, anio + 1)).getStatusCode());
+        assertEquals("Renovar con token", HttpStatus.FORBIDDEN,
+                conToken(cliente, tokenSocio, HttpMethod.POST, "/autenticacion", null).getStatusCode());
+
+        ///Fuera del perfil de pruebas, sin clave configurada no se arranca
+        assertThatThrownBy(() -> new ServicioTokens("", Duration.ofMinutes(15), false, Clock.systemUTC()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DirtiesContext
+    void testCacheUsuarios() {
+        var cliente = new TestRestTemplate(new RestTemplateBuilder()
+                .rootUri("http://localhost:" + localPort + "/clubsocios")
+                .requestFactory(JdkClientHttpRequestFactory.class));
+        cliente.postForEntity("/socios", new DTOSocio("prueba@gmail.com", "Pedro", "Apellido1", "12345678A",
+                "690123456", "123456", EstadoCuota.PENDIENTE), Void.class);
+
+        ///Tras autenticarse, el usuario queda en la caché con su contraseña (se guarda una copia)
+        var socio = cliente.withBasicAuth("prueba@gmail.com", "123456");
+        assertEquals("Primera petición", HttpStatus.OK, socio.postForEntity("/autenticacion", null, DTOToken.class).getStatusCode());
+        var enCache = cacheUsuarios.getUserFromCache("prueba@gmail.com");
+        assertThat(enCache).isNotNull();
+        assertThat(enCache.getPassword()).isNotNull();
+        assertEquals("Desde la caché", HttpStatus.OK, socio.postForEntity("/autenticacion", null, DTOToken.class).getStatusCode());
+        assertEquals("Contraseña errónea", HttpStatus.UNAUTHORIZED, cliente.withBasicAuth("prueba@gmail.com", "654321")
+                .postForEntity("/autenticacion", null, DTOToken.class).getStatusCode());
+
+        ///Modificar el socio lo saca de la caché
+        cliente.withBasicAuth("direccion@clubsocios.es", "serviceSecret")
+                .exchange("/socios/{email}", HttpMethod.PUT, null, DTOSocio.class, "prueba@gmail.com");
+        assertThat(cacheUsuarios.getUserFromCache("prueba@gmail.com")).isNull();
+    }
+
+    private static ResponseEntity<Void> conToken(TestRestTemplate cliente, String token, HttpMethod metodo, String url, Object cuerpo) {
+        HttpHeaders cabeceras = new HttpHeaders();
+        cabeceras.setBearerAuth(token);
+        return cliente.exchange(url, metodo, new HttpEntity<>(cuerpo, cabeceras), Void.class);
+    }
+}
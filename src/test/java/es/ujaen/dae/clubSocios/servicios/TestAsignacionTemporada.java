@@ -0,0 +1,94 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.entidades.Temporada;
+import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+@SpringBootTest(classes = es.ujaen.dae.clubSocios.app.Main.class,
+                properties = "clubsocios.asignacion-temporada.hilos=3")
+@ActiveProfiles("test")
+public class TestAsignacionTemporada {
+    @Autowired
+    ServicioClub servicio;
+
+    @Autowired
+    AsignacionTemporada asignacionTemporada;
+
+    /**
+     * Se asignan sólo las actividades con el plazo terminado; la que ya no tiene plazas cuenta aparte.
+     */
+    @Test
+    @DirtiesContext
+    void testAsignarTemporada() throws Exception {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        int anio = LocalDate.now().getYear();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(anio));
+        var hoy = LocalDate.now();
+
+        List<Socio> socios = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            socios.add(socio);
+        }
+
+        List<Long> terminadas = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            var actividad = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                    new Actividad("Terminada " + i, "Descricion", 15, 10, hoy.plusDays(2), hoy.minusDays(3), hoy.minusDays(1)));
+            terminadas.add(actividad.getId());
+            for (var socio : socios)
+                servicio.registrarSolicitudConReserva(direccion, socio, actividad.getId(), 1);
+        }
+        var llena = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Llena", "Descricion", 15, 1, hoy.plusDays(2), hoy.minusDays(3), hoy.minusDays(1)));
+        servicio.registrarSolicitudConReserva(direccion, socios.get(0), llena.getId(), 1);
+        var abierta = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Abierta", "Descricion", 15, 10, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+        servicio.registrarSolicitudConReserva(direccion, socios.get(0), abierta.getId(), 1);
+
+        var trabajo = asignacionTemporada.lanzar(direccion, anio);
+        ///Mientras está en curso, lanzarlo otra vez devuelve el mismo trabajo
+        var otraVez = asignacionTemporada.lanzar(direccion, anio);
+        assertThat(otraVez == trabajo || trabajo.terminado()).isTrue();
+        trabajo.finalizacion().get(1, TimeUnit.MINUTES);
+
+        assertEquals("Actividades con el plazo terminado", 13, trabajo.getActividades());
+        assertEquals("Actividades asignadas", 12, trabajo.getCompletadas());
+        assertEquals("Actividades sin plazas", 1, trabajo.getSinPlazas());
+        assertEquals("Asignadas por otro", 0, trabajo.getYaAsignadas());
+        assertEquals("Fallidas", 0, trabajo.getFallidas());
+        assertEquals("Cada grupo de 2 recibe la plaza que le faltaba", 12 * 2, trabajo.getPlazasAsignadas());
+        assertThat(asignacionTemporada.buscarTrabajo(trabajo.getId())).containsSame(trabajo);
+
+        for (Long id : terminadas)
+            assertEquals("Plazas libres", 6, servicio.buscarActividad(id).get().getPlazasDisponibles());
+        assertEquals("La actividad abierta no se asigna", 9, servicio.buscarActividad(abierta.getId()).get().getPlazasDisponibles());
+
+        ///Terminado el trabajo, se puede lanzar otro, que no vuelve a asignar las ya asignadas (tampoco la llena)
+        var siguiente = asignacionTemporada.lanzar(direccion, anio);
+        assertThat(siguiente).isNotSameAs(trabajo);
+        siguiente.finalizacion().get(1, TimeUnit.MINUTES);
+        assertEquals("Nada que asignar", 0, siguiente.getActividades());
+
+        ///Pasada la retención se olvidan los trabajos terminados
+        asignacionTemporada.olvidarTerminados(Instant.now().plusSeconds(1));
+        assertThat(asignacionTemporada.buscarTrabajo(trabajo.getId())).isEmpty();
+        assertThat(asignacionTemporada.buscarTrabajo(siguiente.getId())).isEmpty();
+    }
+}
@@ -0,0 +1,153 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.entidades.Temporada;
+import es.ujaen.dae.clubSocios.enums.EstadoActividad;
+import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import es.ujaen.dae.clubSocios.eventos.CambioEstadoActividad;
+import es.ujaen.dae.clubSocios.excepciones.FueraDePlazo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+// Las tareas periódicas no llegan a ejecutarse durante la prueba: se llama a recargar() y comprobarVencimientos()
+@SpringBootTest(classes = es.ujaen.dae.clubSocios.app.Main.class,
+                properties = {"clubsocios.vencimientos.intervalo=3600000", "clubsocios.vencimientos.recarga=3600000"})
+@ActiveProfiles("test")
+@Import(TestPlanificadorVencimientos.ConfiguracionReloj.class)
+@RecordApplicationEvents
+public class TestPlanificadorVencimientos {
+    @Autowired
+    ServicioClub servicio;
+
+    @Autowired
+    PlanificadorVencimientos planificador;
+
+    @Autowired
+    RelojAjustable reloj;
+
+    @Autowired
+    ApplicationEvents eventos;
+
+    /**
+     * Reloj que las pruebas adelantan a mano. Las copias en otra zona comparten el instante, así que también avanzan.
+     */
+    static class RelojAjustable extends Clock {
+        private final AtomicReference<Instant> ahora;
+        private final ZoneId zona;
+
+        RelojAjustable() {
+            this(new AtomicReference<>(Instant.now()), ZoneId.systemDefault());
+        }
+
+        private RelojAjustable(AtomicReference<Instant> ahora, ZoneId zona) {
+            this.ahora = ahora;
+            this.zona = zona;
+        }
+
+        void adelantar(Duration tiempo) {
+            ahora.updateAndGet(instante -> instante.plus(tiempo));
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zona;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zona) {
+            return zona.equals(this.zona) ? this : new RelojAjustable(ahora, zona);
+        }
+
+        @Override
+        public Instant instant() {
+            return ahora.get();
+        }
+    }
+
+    // Sin @Configuration, para que el escaneo de componentes de Main no la recoja en otras pruebas
+    static class ConfiguracionReloj {
+        @Bean
+        @Primary
+        RelojAjustable relojAjustable() {
+            return new RelojAjustable();
+        }
+    }
+
+    @Test
+    @DirtiesContext
+    void testVencimientos() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        var hoy = LocalDate.now();
+        var abierta = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Abierta", "Descricion", 15, 10, hoy.plusDays(3), hoy.minusDays(1), hoy.plusDays(1)));
+        var cerrada = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Cerrada", "Descricion", 15, 10, hoy.plusDays(4), hoy.plusDays(1), hoy.plusDays(2)));
+        for (int i = 0; i < 2; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            servicio.registrarSolicitudConReserva(direccion, socio, abierta.getId(), 1);
+        }
+
+        planificador.recargar();
+        planificador.comprobarVencimientos();
+        assertThat(eventos.stream(CambioEstadoActividad.class)).isEmpty();
+
+        ///Dos días después: se abre la cerrada y termina el plazo de la abierta, que se asigna
+        reloj.adelantar(Duration.ofDays(2));
+        assertThat(reloj.withZone(ZoneOffset.UTC).instant()).isEqualTo(reloj.instant());
+        planificador.comprobarVencimientos();
+        assertThat(eventos.stream(CambioEstadoActividad.class))
+                .extracting(CambioEstadoActividad::actividadId, CambioEstadoActividad::nuevo)
+                .containsExactlyInAnyOrder(tuple(cerrada.getId(), EstadoActividad.ABIERTA),
+                                           tuple(abierta.getId(), EstadoActividad.PLAZO_INSCRIPCION_FINALIZADO));
+        var asignada = servicio.buscarActividad(abierta.getId()).get();
+        assertThat(asignada.isAsignacionRealizada()).isTrue();
+        assertEquals("Cada grupo de 2 recibe la plaza que le faltaba", 6, asignada.getPlazasDisponibles());
+
+        ///ServicioClub comprueba los plazos con el mismo reloj: la primera ya no admite inscripciones y la segunda sí
+        var socio = new Socio("socio2@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+        servicio.crearSocio(socio);
+        assertThatThrownBy(() -> servicio.procesarInscripcion(socio, 0, false, servicio.buscarActividad(abierta.getId()).get()))
+                .isInstanceOf(FueraDePlazo.class);
+        servicio.procesarInscripcion(socio, 0, false, servicio.buscarActividad(cerrada.getId()).get());
+
+        ///Recargar no vuelve a programar lo ya disparado
+        planificador.recargar();
+        planificador.comprobarVencimientos();
+        assertThat(eventos.stream(CambioEstadoActividad.class)).hasSize(2);
+
+        ///Un día más: termina el plazo de la segunda
+        reloj.adelantar(Duration.ofDays(1));
+        planificador.comprobarVencimientos();
+        assertThat(eventos.stream(CambioEstadoActividad.class)).hasSize(3)
+                .last()
+                .extracting(CambioEstadoActividad::actividadId, CambioEstadoActividad::nuevo)
+                .containsExactly(cerrada.getId(), EstadoActividad.PLAZO_INSCRIPCION_FINALIZADO);
+        planificador.recargar();
+        planificador.comprobarVencimientos();
+        assertThat(eventos.stream(CambioEstadoActividad.class)).hasSize(3);
+    }
+}
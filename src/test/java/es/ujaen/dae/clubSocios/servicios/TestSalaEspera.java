@@ -0,0 +1,83 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import es.ujaen.dae.clubSocios.entidades.Actividad;
+import es.ujaen.dae.clubSocios.entidades.Socio;
+import es.ujaen.dae.clubSocios.entidades.Temporada;
+import es.ujaen.dae.clubSocios.enums.EstadoCuota;
+import es.ujaen.dae.clubSocios.enums.EstadoTurno;
+import es.ujaen.dae.clubSocios.excepciones.SalaEsperaLlena;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+
+// La tarea periódica no llega a ejecutarse durante la prueba: los turnos se atienden llamando a atender()
+@SpringBootTest(classes = es.ujaen.dae.clubSocios.app.Main.class,
+                properties = {"clubsocios.sala-espera.capacidad=5", "clubsocios.sala-espera.lote=2",
+                              "clubsocios.sala-espera.intervalo=3600000"})
+@ActiveProfiles("test")
+public class TestSalaEspera {
+    @Autowired
+    ServicioClub servicio;
+
+    @Autowired
+    SalaEspera salaEspera;
+
+    /**
+     * Los turnos se atienden por orden de llegada, de "lote" en "lote", hasta agotar las plazas.
+     */
+    @Test
+    @DirtiesContext
+    void testTurnosPorOrdenDeLlegada() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        var hoy = LocalDate.now();
+        var actividad = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita a museo", "Descricion", 15, 3, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+
+        List<SalaEspera.Turno> turnos = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            turnos.add(salaEspera.pedirTurno(actividad.getId(), socio, 0));
+        }
+
+        assertThat(turnos).extracting(salaEspera::posicion).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(salaEspera.pedirTurno(actividad.getId(), servicio.buscarSocio("socio0@gmail.com").get(), 0))
+                .isSameAs(turnos.get(0));
+
+        var otro = new Socio("otro@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+        servicio.crearSocio(otro);
+        assertThatThrownBy(() -> salaEspera.pedirTurno(actividad.getId(), otro, 0)).isInstanceOf(SalaEsperaLlena.class);
+
+        salaEspera.atender();
+        assertThat(turnos).extracting(SalaEspera.Turno::getEstado)
+                .containsExactly(EstadoTurno.CONFIRMADO, EstadoTurno.CONFIRMADO, EstadoTurno.EN_ESPERA, EstadoTurno.EN_ESPERA, EstadoTurno.EN_ESPERA);
+        assertThat(turnos.subList(2, 5)).extracting(salaEspera::posicion).containsExactly(1L, 2L, 3L);
+
+        salaEspera.atender();
+        salaEspera.atender();
+        assertThat(turnos).extracting(SalaEspera.Turno::getEstado)
+                .containsExactly(EstadoTurno.CONFIRMADO, EstadoTurno.CONFIRMADO, EstadoTurno.CONFIRMADO, EstadoTurno.RECHAZADO, EstadoTurno.RECHAZADO);
+        assertThat(turnos.get(0).getSolicitudId()).isNotNull();
+        assertEquals("No quedan plazas", 0, servicio.buscarActividad(actividad.getId()).get().getPlazasDisponibles());
+        assertThat(salaEspera.buscarTurno(turnos.get(4).getId())).isPresent();
+
+        // Pasada la retención se olvidan los turnos y la cola vacía se retira; un turno nuevo abre otra
+        salaEspera.olvidarResueltos(Instant.now().plusSeconds(1));
+        assertThat(salaEspera.buscarTurno(turnos.get(4).getId())).isEmpty();
+        assertEquals("Cola retirada", 0, salaEspera.numColas());
+        assertThat(salaEspera.posicion(salaEspera.pedirTurno(actividad.getId(), otro, 0))).isEqualTo(1L);
+        assertEquals("Cola nueva", 1, salaEspera.numColas());
+    }
+}
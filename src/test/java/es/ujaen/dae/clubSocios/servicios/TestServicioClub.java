@@ -6,23 +6,42 @@ import es.ujaen.dae.clubSocios.entidades.Solicitud;
 import es.ujaen.dae.clubSocios.entidades.Temporada;
 import es.ujaen.dae.clubSocios.enums.EstadoCuota;
 import es.ujaen.dae.clubSocios.enums.EstadoSolicitud;
+import es.ujaen.dae.clubSocios.enums.EstrategiaBloqueo;
 import es.ujaen.dae.clubSocios.excepciones.*;
 import es.ujaen.dae.clubSocios.repositorios.RepositorioActividad;
 import es.ujaen.dae.clubSocios.repositorios.RepositorioSocio;
+import es.ujaen.dae.clubSocios.repositorios.RepositorioTemporada;
+import es.ujaen.dae.clubSocios.rest.dto.DTOActividad;
+import es.ujaen.dae.clubSocios.security.CacheUsuarios;
 import es.ujaen.dae.clubSocios.servicios.ServicioClub;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
 import jakarta.transaction.Transactional;
 import jakarta.validation.ConstraintViolationException;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.as;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -35,6 +54,30 @@ public class TestServicioClub {
     @Autowired
     ServicioClub servicio;
 
+    @Autowired
+    RepositorioSocio repositorioSocio;
+
+    @Autowired
+    RepositorioActividad repositorioActividad;
+
+    @Autowired
+    ServicioEstadisticas servicioEstadisticas;
+
+    @Autowired
+    NormalizacionTitulos normalizacionTitulos;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    CacheUsuarios cacheUsuarios;
+
+    @PersistenceUnit
+    EntityManagerFactory emf;
+
     @Test
     @DirtiesContext
     void testNuevaTemporada() {
@@ -139,6 +182,65 @@ public class TestServicioClub {
         assertThat(temporadaOptional.get().getTemporadaId()).isEqualTo(temporada.getTemporadaId());
     }
 
+    @Test
+    @DirtiesContext
+    void testBuscarTemporadaPorAnio() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+
+        // El año sin temporada también se guarda en caché, y debe invalidarse al crearla
+        assertThat(servicio.buscarTemporada(2030)).isEmpty();
+        servicio.crearTemporada(direccion, new Temporada(2030));
+
+        var temporada = servicio.buscarTemporada(2030);
+        assertThat(temporada).isPresent();
+        assertThat(temporada.get().getAnio()).isEqualTo(2030);
+
+        // La caché guarda el id: cada búsqueda devuelve su propia instancia, sin consultar la base de datos
+        Statistics estadisticas = emf.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        var otra = servicio.buscarTemporada(2030).get();
+        assertThat(otra).isNotSameAs(temporada.get());
+        assertThat(otra.getTemporadaId()).isEqualTo(temporada.get().getTemporadaId());
+        assertEquals("Sin consultas", 0L, estadisticas.getQueryExecutionCount());
+        assertEquals("Sin cargas desde la base de datos", 0L, estadisticas.getEntityLoadCount());
+    }
+
+    @Test
+    @DirtiesContext
+    void testCacheTemporadasInvalidaAlConfirmar() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var cache = cacheManager.getCache(RepositorioTemporada.CACHE_TEMPORADAS_POR_ANIO);
+
+        assertThat(servicio.buscarTemporada(2031)).isEmpty();
+        assertThat(cache.get(2031)).isNotNull();
+
+        // Dentro de la transacción la invalidación queda pendiente hasta el commit
+        transactionTemplate.executeWithoutResult(estado -> {
+            servicio.crearTemporada(direccion, new Temporada(2031));
+            assertThat(cache.get(2031)).isNotNull();
+        });
+        assertThat(cache.get(2031)).isNull();
+        assertThat(servicio.buscarTemporada(2031)).isPresent();
+    }
+
+    /**
+     * Modificar un socio lo saca de la caché de usuarios al confirmar la transacción, no antes: si se sacara antes,
+     * una autenticación concurrente podría volver a guardar los datos anteriores al cambio.
+     */
+    @Test
+    @DirtiesContext
+    void testCacheUsuariosInvalidaAlConfirmar() {
+        var socio = new Socio("prueba@gmail.com", "Pedro", "Apellido1 Apellido2", "12345678A", "690123456", "123456", EstadoCuota.PENDIENTE);
+        servicio.crearSocio(socio);
+        cacheUsuarios.putUserInCache(User.withUsername(socio.getSocioId()).password("123456").roles("USER").build());
+
+        transactionTemplate.executeWithoutResult(estado -> {
+            repositorioSocio.actualizar(socio);
+            assertThat(cacheUsuarios.getUserFromCache(socio.getSocioId())).isNotNull();
+        });
+        assertThat(cacheUsuarios.getUserFromCache(socio.getSocioId())).isNull();
+    }
+
     @Test
     @DirtiesContext
     void testBuscarActividad() {
@@ -219,6 +321,22 @@ public class TestServicioClub {
         assertEquals("El estado de cuota de los socios debe estar en Pendiente", EstadoCuota.PENDIENTE, socio2Actualizado.getEstadoCuota());
     }
 
+    @Test
+    @DirtiesContext
+    void testResetearEstadoCuotaMasivo() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+
+        int numSocios = 10_000;
+        for (int i = 0; i < numSocios; i++) {
+            var estado = i % 4 == 0 ? EstadoCuota.PENDIENTE : EstadoCuota.PAGADA;
+            repositorioSocio.crear(new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", estado));
+        }
+
+        assertEquals("Sólo cambian los socios que tenían la cuota pagada", numSocios * 3 / 4, servicio.resetearEstadoCuota(direccion));
+        assertThat(repositorioSocio.listadoSocios()).allMatch(s -> s.getEstadoCuota() == EstadoCuota.PENDIENTE);
+        assertEquals("Una segunda ejecución no modifica nada", 0, servicio.resetearEstadoCuota(direccion));
+    }
+
     @Test
     @DirtiesContext
     void testAsignarPlazasFinal(){
@@ -295,4 +413,546 @@ public class TestServicioClub {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    @DirtiesContext
+    void testRegistrarSolicitudConReserva() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+
+        var socio1 = new Socio("prueba@gmail.com", "Pedro", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+        var socio2 = new Socio("prueba2@gmail.com", "Prueba", "Apellido1 Apellido2", "11211111M", "690123456", "123456", EstadoCuota.PAGADA);
+        var socio3 = new Socio("prueba3@gmail.com", "Prueba", "Apellido1 Apellido2", "11311111M", "690123456", "123456", EstadoCuota.PAGADA);
+        servicio.crearSocio(socio1);
+        servicio.crearSocio(socio2);
+        servicio.crearSocio(socio3);
+
+        var hoy = LocalDate.now();
+        var actividad = new Actividad("Visita a museo", "Descricion", 15, 2, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1));
+        servicio.crearActividad(direccion, temporada.getTemporadaId(), actividad);
+
+        var solicitud = servicio.registrarSolicitudConReserva(direccion, socio1, actividad.getId(), 2);
+        assertEquals("La solicitud tiene ya concedida la plaza del socio", 1, solicitud.getPlazasConcedidas());
+        assertThatThrownBy(() -> servicio.registrarSolicitudConReserva(direccion, socio1, actividad.getId(), 1))
+                .isInstanceOf(SolicitudYaRealizada.class);
+
+        // La última plaza deja la solicitud en el mismo estado que la inscripción en memoria (Actividad.asignarPlaza)
+        var ultima = servicio.registrarSolicitudConReserva(direccion, socio2, actividad.getId(), 0);
+        var enMemoria = new Actividad("Visita a museo", "Descricion", 15, 1, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1))
+                .solicitarInscripcion(socio2, 0, false);
+        assertEquals("Estado con la última plaza", enMemoria.getEstadoSolicitud(), ultima.getEstadoSolicitud());
+        assertThatThrownBy(() -> servicio.registrarSolicitudConReserva(direccion, socio3, actividad.getId(), 0))
+                .isInstanceOf(NoHayPlazas.class);
+
+        // Si dos peticiones del mismo socio pasan a la vez la comprobación previa, la restricción única decide
+        var duplicada = new Solicitud(socio2, 0);
+        duplicada.setActividad(actividad);
+        assertThatThrownBy(() -> repositorioActividad.insertarSolicitud(duplicada))
+                .isInstanceOfSatisfying(DataIntegrityViolationException.class,
+                        e -> assertThat(ServicioClub.solicitudDuplicada(e)).isTrue());
+
+        assertEquals("Se han reservado las 2 plazas", 0, servicio.buscarActividad(actividad.getId()).get().getPlazasDisponibles());
+        assertEquals("Debe haber 2 solicitudes registradas", 2, servicio.revisarSolicitudes(direccion, actividad.getId()).size());
+
+        assertThat(servicio.buscarSolicitudSocio(direccion, actividad.getId(), socio1.getSocioId()))
+                .hasValueSatisfying(s -> assertThat(s.getSolicitudId()).isEqualTo(solicitud.getSolicitudId()));
+        assertThat(servicio.buscarSolicitudSocio(direccion, actividad.getId(), socio3.getSocioId())).isEmpty();
+    }
+
+    /**
+     * El contador de plazas en memoria deja pasar exactamente las plazas de la actividad, aunque lleguen
+     * muchas solicitudes a la vez, y devuelve la plaza si la inscripción no llega a guardarse.
+     */
+    @Test
+    @DirtiesContext
+    void testAforoActividad() throws Exception {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        var hoy = LocalDate.now();
+        var actividad = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita a museo", "Descricion", 15, 5, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+
+        // Socio sin guardar: la inserción de la solicitud falla al confirmar y la plaza vuelve al contador
+        var noRegistrado = new Socio("noregistrado@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+        assertThatThrownBy(() -> servicio.registrarSolicitudConReserva(direccion, noRegistrado, actividad.getId(), 0))
+                .isInstanceOf(RuntimeException.class);
+        assertThat(servicio.actividadAgotada(actividad.getId())).isFalse();
+
+        int numSocios = 32;
+        List<Socio> socios = new ArrayList<>();
+        for (int i = 0; i < numSocios; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            socios.add(socio);
+        }
+
+        var hilos = Executors.newFixedThreadPool(8);
+        AtomicInteger confirmadas = new AtomicInteger();
+        AtomicInteger agotadas = new AtomicInteger();
+        for (Socio socio : socios) {
+            hilos.submit(() -> {
+                try {
+                    servicio.registrarSolicitudConReserva(direccion, socio, actividad.getId(), 0);
+                    confirmadas.incrementAndGet();
+                } catch (NoHayPlazas e) {
+                    agotadas.incrementAndGet();
+                }
+            });
+        }
+        hilos.shutdown();
+        assertThat(hilos.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        assertEquals("Se confirman tantas solicitudes como plazas", 5, confirmadas.get());
+        assertEquals("El resto se rechaza por falta de plazas", numSocios - 5, agotadas.get());
+        assertEquals("No quedan plazas", 0, servicio.buscarActividad(actividad.getId()).get().getPlazasDisponibles());
+        assertThat(servicio.actividadAgotada(actividad.getId())).isTrue();
+    }
+
+    /**
+     * Prueba de carga de registrarSolicitud: varios hilos inscriben socios en dos actividades a la vez.
+     * Con el cerrojo por actividad no debe haber conflictos de versión que agoten los reintentos.
+     */
+    @Test
+    @DirtiesContext
+    void testRegistrarSolicitudConcurrente() throws Exception {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        var hoy = LocalDate.now();
+        int numSocios = 200;
+        List<Long> actividades = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            actividades.add(servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                    new Actividad("Actividad " + i, "Descricion", 15, numSocios, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1))).getId());
+        }
+
+        List<Socio> socios = new ArrayList<>();
+        for (int i = 0; i < numSocios; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            socios.add(socio);
+        }
+
+        var hilos = Executors.newFixedThreadPool(16);
+        List<Future<?>> inscripciones = new ArrayList<>();
+        for (int i = 0; i < numSocios; i++) {
+            var socio = socios.get(i);
+            var actividadId = actividades.get(i % 2);
+            inscripciones.add(hilos.submit(() -> servicio.registrarSolicitud(direccion, socio, actividadId, 0)));
+        }
+
+        for (Future<?> inscripcion : inscripciones)
+            inscripcion.get(1, TimeUnit.MINUTES);
+        hilos.shutdown();
+
+        for (Long actividadId : actividades) {
+            var actividad = servicio.buscarActividad(actividadId).get();
+            assertEquals("Todas las inscripciones de la actividad se confirman", numSocios / 2, actividad.getSolicitudes().size());
+            assertEquals("Cada una consume una plaza", numSocios / 2, actividad.getPlazasDisponibles());
+        }
+    }
+
+    @Test
+    @DirtiesContext
+    void testRegistrarSolicitudTransaccionPropia() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        var hoy = LocalDate.now();
+        var actividad = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita a museo", "Descricion", 15, 10, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+        var socio = new Socio("prueba@gmail.com", "Pedro", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+        servicio.crearSocio(socio);
+
+        // Llamada dentro de una transacción que luego se deshace: la inscripción se confirma en la suya
+        transactionTemplate.executeWithoutResult(estado -> {
+            servicio.registrarSolicitud(direccion, socio, actividad.getId(), 0);
+            estado.setRollbackOnly();
+        });
+
+        assertThat(servicio.buscarSolicitudSocio(direccion, actividad.getId(), socio.getSocioId())).isPresent();
+    }
+
+    @Test
+    @DirtiesContext
+    void testEstrategiasBloqueo() throws Exception {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        var hoy = LocalDate.now();
+        int numSocios = 60;
+
+        Map<EstrategiaBloqueo, Long> actividades = new EnumMap<>(EstrategiaBloqueo.class);
+        for (EstrategiaBloqueo estrategia : List.of(EstrategiaBloqueo.PESIMISTA, EstrategiaBloqueo.SALTAR_BLOQUEADAS)) {
+            Long id = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                    new Actividad("Actividad " + estrategia, "Descricion", 15, numSocios, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1))).getId();
+            servicio.cambiarEstrategiaBloqueo(direccion, id, estrategia);
+            actividades.put(estrategia, id);
+        }
+
+        List<Socio> socios = new ArrayList<>();
+        for (int i = 0; i < numSocios; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            socios.add(socio);
+        }
+
+        var hilos = Executors.newFixedThreadPool(8);
+        Map<EstrategiaBloqueo, List<Future<Boolean>>> resultados = new EnumMap<>(EstrategiaBloqueo.class);
+        for (var socio : socios) {
+            actividades.forEach((estrategia, actividadId) ->
+                    resultados.computeIfAbsent(estrategia, e -> new ArrayList<>()).add(hilos.submit(() -> {
+                        try {
+                            servicio.registrarSolicitud(direccion, socio, actividadId, 0);
+                            return true;
+                        } catch (ConflictoDeConcurrenciaException e) {
+                            return false;
+                        }
+                    })));
+        }
+
+        Map<EstrategiaBloqueo, Integer> confirmadas = new EnumMap<>(EstrategiaBloqueo.class);
+        for (var resultado : resultados.entrySet()) {
+            int n = 0;
+            for (Future<Boolean> confirmada : resultado.getValue())
+                n += confirmada.get(1, TimeUnit.MINUTES) ? 1 : 0;
+            confirmadas.put(resultado.getKey(), n);
+        }
+        hilos.shutdown();
+
+        ///Con bloqueo pesimista todas esperan su turno; saltando las bloqueadas alguna puede rendirse tras los reintentos
+        assertEquals("Con bloqueo pesimista se confirman todas", numSocios, (int) confirmadas.get(EstrategiaBloqueo.PESIMISTA));
+        assertThat(confirmadas.get(EstrategiaBloqueo.SALTAR_BLOQUEADAS)).isPositive();
+        for (var actividad : actividades.entrySet()) {
+            var cargada = servicio.buscarActividad(actividad.getValue()).get();
+            int n = confirmadas.get(actividad.getKey());
+            assertEquals("Una solicitud por inscripción confirmada", n, cargada.getSolicitudes().size());
+            assertEquals("Cada una consume una plaza", numSocios - n, cargada.getPlazasDisponibles());
+        }
+    }
+
+    /**
+     * Las estrategias de bloqueo se aplican también a la inscripción con reserva de plaza, que es la que usan
+     * el controlador y la sala de espera.
+     */
+    @Test
+    @DirtiesContext
+    void testEstrategiasBloqueoConReserva() throws Exception {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        var hoy = LocalDate.now();
+        int numSocios = 60;
+
+        Map<EstrategiaBloqueo, Long> actividades = new EnumMap<>(EstrategiaBloqueo.class);
+        for (EstrategiaBloqueo estrategia : EstrategiaBloqueo.values()) {
+            Long id = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                    new Actividad("Actividad " + estrategia, "Descricion", 15, numSocios, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1))).getId();
+            servicio.cambiarEstrategiaBloqueo(direccion, id, estrategia);
+            actividades.put(estrategia, id);
+        }
+
+        List<Socio> socios = new ArrayList<>();
+        for (int i = 0; i < numSocios; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            socios.add(socio);
+        }
+
+        var hilos = Executors.newFixedThreadPool(8);
+        Map<EstrategiaBloqueo, List<Future<Boolean>>> resultados = new EnumMap<>(EstrategiaBloqueo.class);
+        for (var socio : socios) {
+            actividades.forEach((estrategia, actividadId) ->
+                    resultados.computeIfAbsent(estrategia, e -> new ArrayList<>()).add(hilos.submit(() -> {
+                        try {
+                            servicio.registrarSolicitudConReserva(direccion, socio, actividadId, 0);
+                            return true;
+                        } catch (ConflictoDeConcurrenciaException e) {
+                            return false;
+                        }
+                    })));
+        }
+
+        Map<EstrategiaBloqueo, Integer> confirmadas = new EnumMap<>(EstrategiaBloqueo.class);
+        for (var resultado : resultados.entrySet()) {
+            int n = 0;
+            for (Future<Boolean> confirmada : resultado.getValue())
+                n += confirmada.get(1, TimeUnit.MINUTES) ? 1 : 0;
+            confirmadas.put(resultado.getKey(), n);
+        }
+        hilos.shutdown();
+
+        ///La reserva con UPDATE condicionado no choca por versión: sin bloqueo previo o esperándolo se confirman todas
+        assertEquals("Con bloqueo optimista se confirman todas", numSocios, (int) confirmadas.get(EstrategiaBloqueo.OPTIMISTA));
+        assertEquals("Con bloqueo pesimista se confirman todas", numSocios, (int) confirmadas.get(EstrategiaBloqueo.PESIMISTA));
+        assertThat(confirmadas.get(EstrategiaBloqueo.SALTAR_BLOQUEADAS)).isPositive();
+        for (var actividad : actividades.entrySet()) {
+            int n = confirmadas.get(actividad.getKey());
+            assertThat(servicio.revisarSolicitudes(direccion, actividad.getValue())).hasSize(n);
+            assertEquals("Cada una consume una plaza", numSocios - n,
+                    servicio.buscarActividadSinSolicitudes(actividad.getValue()).get().getPlazasDisponibles());
+        }
+    }
+
+    @Test
+    @DirtiesContext
+    void testAsignarPlazasFinInscripcionEnLote() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        LocalDate hoy = LocalDate.now();
+        int numSocios = 120;
+        var actividad = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita a museo", "Descricion", 15, numSocios * 2, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+
+        for (int i = 0; i < numSocios; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            servicio.registrarSolicitudConReserva(direccion, socio, actividad.getId(), 1);
+        }
+
+        Statistics estadisticas = emf.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        var resultado = servicio.asignarPlazasFinInscripcion(direccion, actividad.getId(), true);
+
+        ///Cada grupo de 2 recibe la plaza que le faltaba; las solicitudes se actualizan en lotes de 50
+        assertEquals("Plazas asignadas", numSocios, resultado.plazasAsignadas());
+        assertEquals("Solicitudes y actividad actualizadas", (long) numSocios + 1, estadisticas.getEntityUpdateCount());
+        // Carga de la actividad con sus solicitudes, update de solicitud (una sola sentencia para todos los lotes)
+        // y update de la actividad
+        assertEquals("Sentencias preparadas", 3L, estadisticas.getPrepareStatementCount());
+        assertThat(servicio.revisarSolicitudes(direccion, actividad.getId()))
+                .allMatch(s -> s.getEstadoSolicitud() == EstadoSolicitud.CERRADA && s.getPlazasConcedidas() == 2);
+    }
+
+    @Test
+    @DirtiesContext
+    void testCrearActividadesEnLote() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+
+        var hoy = LocalDate.now();
+        List<Actividad> actividades = new ArrayList<>();
+        for (int i = 0; i < 120; i++)
+            actividades.add(new Actividad("Actividad " + (char) ('A' + i / 26) + (char) ('A' + i % 26), "Descripcion", 10, 20,
+                    hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+
+        servicio.crearActividades(direccion, temporada.getTemporadaId(), actividades);
+
+        assertThat(actividades).allMatch(a -> a.getId() != null);
+        assertThat(actividades.stream().map(Actividad::getId).distinct()).hasSize(120);
+        assertEquals("La temporada debe tener las 120 actividades", 120, servicio.obtenerActividadesTemporada(temporada.getTemporadaId()).size());
+        assertThat(servicio.listadoActividadesTemporada(temporada.getTemporadaId()))
+                .extracting(DTOActividad::id)
+                .containsExactlyElementsOf(actividades.stream().map(Actividad::getId).sorted().toList());
+    }
+
+    @Test
+    void testIdsSolicitudOrdenados() {
+        var socio = new Socio("prueba@gmail.com", "Pedro", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+        var solicitud = new Solicitud(socio, 0);
+        var siguiente = new Solicitud(socio, 0);
+        assertThat(siguiente.getSolicitudId()).isGreaterThan(solicitud.getSolicitudId());
+    }
+
+    @Test
+    @DirtiesContext
+    void testImportarSolicitudesEnLote() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        LocalDate hoy = LocalDate.now();
+        int numSocios = 120;
+        var actividad = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita a museo", "Descricion", 15, numSocios + 1, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+
+        Map<String, Integer> acompanantesPorSocio = new LinkedHashMap<>();
+        for (int i = 0; i < numSocios; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            acompanantesPorSocio.put(socio.getSocioId(), 0);
+        }
+
+        Statistics estadisticas = emf.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        var solicitudes = servicio.importarSolicitudes(direccion, actividad.getId(), acompanantesPorSocio);
+
+        ///Actividad y socios en dos consultas, las 120 inserciones en 3 lotes de 50 y la actualización de la actividad
+        assertEquals("Solicitudes importadas", (long) numSocios, estadisticas.getEntityInsertCount());
+        assertThat(estadisticas.getPrepareStatementCount()).isLessThanOrEqualTo(2 + 3 + 1);
+        assertThat(servicio.revisarSolicitudes(direccion, actividad.getId()))
+                .extracting(Solicitud::getSolicitudId)
+                .containsExactlyElementsOf(solicitudes.stream().map(Solicitud::getSolicitudId).toList());
+        assertEquals("Una plaza por solicitud", 1, servicio.buscarActividad(actividad.getId()).get().getPlazasDisponibles());
+
+        ///Un socio que no existe o que ya tiene solicitud anula toda la importación
+        assertThatThrownBy(() -> servicio.importarSolicitudes(direccion, actividad.getId(), Map.of("noexiste@gmail.com", 0)))
+                .isInstanceOf(SocioNoExiste.class);
+        assertThatThrownBy(() -> servicio.importarSolicitudes(direccion, actividad.getId(), Map.of("socio0@gmail.com", 0)))
+                .isInstanceOf(SolicitudYaRealizada.class);
+    }
+
+    @Test
+    @DirtiesContext
+    void testTituloActividadDuplicado() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        int anio = LocalDate.now().getYear();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(anio));
+        var temporadaSiguiente = servicio.crearTemporada(direccion, new Temporada(anio + 1));
+
+        var hoy = LocalDate.now();
+        servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita a museo", "Descripcion", 10, 20, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+
+        // Mismo título salvo mayúsculas, tildes y espacios: duplicado
+        assertThatThrownBy(() -> servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("  VISITA a  muséo ", "Descripcion", 10, 20, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1))))
+                .isInstanceOf(ActividadYaRegistrada.class);
+
+        // Un título que contiene a otro ya no se considera duplicado, ni el mismo título en otra temporada
+        servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita", "Descripcion", 10, 20, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+        servicio.crearActividad(direccion, temporadaSiguiente.getTemporadaId(),
+                new Actividad("Visita a museo", "Descripcion", 10, 20, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+
+        assertThat(servicio.buscarActividadPorNombre(temporada.getTemporadaId(), "VISITA")).hasSize(2);
+        assertThat(servicio.buscarActividadPorNombre(temporada.getTemporadaId(), "museo")).hasSize(1);
+    }
+
+    @Test
+    @DirtiesContext
+    void testCompletarTitulosNormalizados() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        Long temporadaId = temporada.getTemporadaId();
+
+        var hoy = LocalDate.now();
+        for (String titulo : List.of("Visita a museo", "Ruta 100% a pie", "Ruta 1000 a pie", "Visita al museo"))
+            servicio.crearActividad(direccion, temporadaId,
+                    new Actividad(titulo, "Descripcion", 10, 20, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+
+        // Actividades guardadas antes de existir la columna, una de ellas con un título que choca con otra al normalizarlo
+        var em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.createQuery("update Actividad a set a.tituloNormalizado = null").executeUpdate();
+        em.createQuery("update Actividad a set a.titulo = 'VISITA a muséo' where a.titulo = 'Visita al museo'").executeUpdate();
+        em.getTransaction().commit();
+        em.close();
+        emf.getCache().evictAll();
+        assertThat(servicio.buscarActividadPorNombre(temporadaId, "museo")).isEmpty();
+
+        assertEquals("Actividades completadas", 3, normalizacionTitulos.completarTitulosNormalizados());
+        assertThat(servicio.buscarActividadPorNombre(temporadaId, "museo")).extracting(Actividad::getTitulo)
+                .containsExactly("Visita a museo");
+
+        // Los comodines de LIKE del texto buscado se toman literalmente
+        assertThat(servicio.buscarActividadPorNombre(temporadaId, "100%")).extracting(Actividad::getTitulo)
+                .containsExactly("Ruta 100% a pie");
+        assertThat(servicio.buscarActividadPorNombre(temporadaId, "ruta _")).isEmpty();
+    }
+
+    /**
+     * Al refrescar la actividad se rehacen los índices de solicitudes aunque el número de solicitudes no cambie.
+     */
+    @Test
+    @DirtiesContext
+    void testIndicesSolicitudesAlRefrescar() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        var hoy = LocalDate.now();
+        var actividad = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita a museo", "Descricion", 15, 10, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+        List<Socio> socios = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            socios.add(socio);
+        }
+        Long primera = servicio.registrarSolicitudConReserva(direccion, socios.get(0), actividad.getId(), 0).getSolicitudId();
+
+        var em = emf.createEntityManager();
+        em.getTransaction().begin();
+        var cargada = em.find(Actividad.class, actividad.getId());
+        assertThat(cargada.solicitudExiste(primera)).isTrue();
+
+        // Otra transacción cambia la solicitud por la de otro socio: sigue habiendo una
+        var otra = emf.createEntityManager();
+        otra.getTransaction().begin();
+        otra.remove(otra.find(Solicitud.class, primera));
+        otra.getTransaction().commit();
+        otra.close();
+        Long segunda = servicio.registrarSolicitudConReserva(direccion, socios.get(1), actividad.getId(), 0).getSolicitudId();
+
+        em.refresh(cargada);
+        assertThat(cargada.solicitudExiste(primera)).isFalse();
+        assertThat(cargada.solicitudExiste(segunda)).isTrue();
+        em.getTransaction().rollback();
+        em.close();
+    }
+
+    @Test
+    @DirtiesContext
+    void testCacheSegundoNivel() {
+        var socio = new Socio("prueba@gmail.com", "Pedro", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+        servicio.crearSocio(socio);
+
+        // Cada búsqueda fuera de transacción usa un contexto de persistencia nuevo: sólo la caché evita ir a la base de datos
+        servicio.buscarSocio(socio.getSocioId());
+        servicio.buscarSocio(socio.getSocioId());
+
+        var region = servicioEstadisticas.estadisticasCache().stream()
+                .filter(r -> r.region().equals("socio"))
+                .findFirst();
+        assertThat(region).isPresent();
+        assertThat(region.get().aciertos()).isGreaterThanOrEqualTo(2);
+    }
+
+    /**
+     * Las solicitudes guardan la clave de su actividad (sin tabla intermedia), así que inscribir a un socio
+     * cuesta las mismas sentencias tenga la actividad una solicitud o cien.
+     */
+    @Test
+    @DirtiesContext
+    void testSentenciasProcesarInscripcion() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        LocalDate hoy = LocalDate.now();
+        var actividad = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita a museo", "Descricion", 15, 500, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+
+        Statistics estadisticas = emf.unwrap(SessionFactory.class).getStatistics();
+        List<Long> sentencias = new ArrayList<>();
+        long recreacionesColeccion = 0;
+        for (int i = 0; i < 101; i++) {
+            var socio = new Socio("socio" + i + "@gmail.com", "Nombre", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+            servicio.crearSocio(socio);
+            var cargada = servicio.buscarActividad(actividad.getId()).get();
+
+            estadisticas.clear();
+            servicio.procesarInscripcion(socio, 1, false, cargada);
+            sentencias.add(estadisticas.getPrepareStatementCount());
+            recreacionesColeccion += estadisticas.getCollectionRecreateCount() + estadisticas.getCollectionRemoveCount();
+        }
+
+        // Con tabla intermedia, cada inscripción borraba y volvía a insertar todas las filas de la colección
+        assertEquals("No se reescribe la colección de solicitudes", 0L, recreacionesColeccion);
+        assertEquals("Inscribir la solicitud 101 cuesta lo mismo que inscribir la primera", sentencias.get(0), sentencias.get(100));
+        assertThat(sentencias.get(100)).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    @DirtiesContext
+    void testInscripcionDuplicadaConcurrente() {
+        var direccion = servicio.buscarSocio("direccion@clubsocios.es").get();
+        var temporada = servicio.crearTemporada(direccion, new Temporada(LocalDate.now().getYear()));
+        LocalDate hoy = LocalDate.now();
+        var actividad = servicio.crearActividad(direccion, temporada.getTemporadaId(),
+                new Actividad("Visita a museo", "Descricion", 15, 10, hoy.plusDays(2), hoy.minusDays(1), hoy.plusDays(1)));
+        var socio = new Socio("prueba@gmail.com", "Pedro", "Apellido1 Apellido2", "11111111M", "690123456", "123456", EstadoCuota.PAGADA);
+        servicio.crearSocio(socio);
+
+        // La actividad se carga antes de que otra petición inscriba al mismo socio: la comprobación en memoria no la ve
+        var cargada = servicio.buscarActividad(actividad.getId()).get();
+        servicio.registrarSolicitudConReserva(direccion, socio, actividad.getId(), 0);
+
+        assertThatThrownBy(() -> servicio.procesarInscripcion(socio, 0, true, cargada))
+                .isInstanceOf(SolicitudYaRealizada.class);
+        assertThatThrownBy(() -> servicio.registrarSolicitud(direccion, socio, actividad.getId(), 0))
+                .isInstanceOf(SolicitudYaRealizada.class);
+        assertThat(servicio.revisarSolicitudes(direccion, actividad.getId())).hasSize(1);
+    }
+
+}
@@ -0,0 +1,45 @@
+package es.ujaen.dae.clubSocios.servicios;
+
+import es.ujaen.dae.clubSocios.entidades.RespuestaIdempotente;
+import es.ujaen.dae.clubSocios.excepciones.ClaveIdempotenciaReutilizada;
+import es.ujaen.dae.clubSocios.excepciones.PeticionEnCurso;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+@SpringBootTest(classes = es.ujaen.dae.clubSocios.app.Main.class,
+                properties = "clubsocios.idempotencia.reserva=500ms")
+@ActiveProfiles("test")
+public class TestServicioIdempotencia {
+    @Autowired
+    ServicioIdempotencia servicioIdempotencia;
+
+    /**
+     * Una clave reservada sin respuesta (la petición original no llegó a terminar) bloquea las repeticiones
+     * sólo hasta que vence la reserva; después la retoma una de ellas.
+     */
+    @Test
+    @DirtiesContext
+    void testReservaSinRespuestaVence() throws InterruptedException {
+        String clave = "socio@gmail.com:alta-1";
+        String peticion = "POST /clubsocios/temporadas/2025/actividades/1/solicitudes?numAcom=[0]";
+
+        assertThat(servicioIdempotencia.reservar(clave, peticion)).isEmpty();
+        assertThatThrownBy(() -> servicioIdempotencia.reservar(clave, peticion)).isInstanceOf(PeticionEnCurso.class);
+        assertThatThrownBy(() -> servicioIdempotencia.reservar(clave, peticion + "&otra"))
+                .isInstanceOf(ClaveIdempotenciaReutilizada.class);
+
+        Thread.sleep(600);
+        assertThat(servicioIdempotencia.reservar(clave, peticion)).isEmpty();
+        assertThatThrownBy(() -> servicioIdempotencia.reservar(clave, peticion)).isInstanceOf(PeticionEnCurso.class);
+
+        servicioIdempotencia.completar(clave, 201, null);
+        assertThat(servicioIdempotencia.reservar(clave, peticion)).get()
+                .extracting(RespuestaIdempotente::getEstado).isEqualTo(201);
+    }
+}